@@ -9,8 +9,11 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.lang.reflect.Field;
 import javax.swing.JFrame;
+import render.image.DirtyRegion;
 import render.image.Image;
 import render.image.IntBackedImage;
+import util.concurrent.ThreadPool;
+import util.pool.ReferencePool;
 
 public abstract class Core
 {
@@ -60,6 +63,23 @@ public abstract class Core
 	 */
 	protected FrameBarrier barrier;
 	
+	/**
+	 * Threads for striping full screen drawing in paint(), one per core.
+	 */
+	private final ThreadPool renderPool;
+	
+	/**
+	 * The fraction of the screen a frame's dirty area can cover before the whole frame is presented instead of each dirty rectangle.
+	 */
+	protected double fullFrameThreshold = .5;
+	
+	/**
+	 * True if paint() records everything it draws, so only the dirty area of each frame is presented and copied to the back buffer.
+	 * Writes through set(), the row methods and the buffer image's Graphics aren't recorded, only turn this on if paint() calls markDirty() for those.
+	 * Off by default, every frame is presented and synced in full.
+	 */
+	protected boolean partialPresent;
+	
 	/**
 	 * The title of the program.
 	 */
@@ -89,6 +109,8 @@ public abstract class Core
 		screen = new IntBackedImage(frame.getTrueWidth(), frame.getTrueHeight());
 		buffer = new IntBackedImage(frame.getTrueWidth(), frame.getTrueHeight());
 		
+		renderPool = new ThreadPool(Runtime.getRuntime().availableProcessors());
+		
 		painter = new Thread(new RenderTask(), name + " Core Painter");
 		painter.setDaemon(true);
 		barrier = new FrameBarrier();
@@ -143,6 +165,14 @@ public abstract class Core
 	
 	public abstract void paint(Image image);
 	
+	/**
+	 * @return The pool paint() can pass to the ThreadPool overloads of the drawing methods, so full screen operations use every core.
+	 */
+	public ThreadPool getRenderPool()
+	{
+		return renderPool;
+	}
+	
 	private int titleUpdateTicker = 0;
 	
 	/**
@@ -172,6 +202,8 @@ public abstract class Core
 				passed -= invTickRate;
 				
 				tick();
+				//recycle the tick's temporaries
+				ReferencePool.clearAll();
 				
 				titleUpdateTicker++;
 				if(titleUpdateTicker > tickRate)
@@ -212,17 +244,49 @@ public abstract class Core
 		{
 			buffer.resize(Math.max(frame.getTrueWidth(), 1), Math.max(frame.getTrueHeight(), 1));
 		}
+		boolean resized = buffer.getWidth() != screen.getWidth() || buffer.getHeight() != screen.getHeight();
+		//the last frame only tracked what it drew if partial presents were already on
+		boolean partial = partialPresent && !resized && screen.isDirtyTracking();
+		//the buffer is a frame behind, so copy in what was drawn on the screen last frame
+		if(partial)
+		{
+			for(Rectangle rect : screen.getDirtyRegion().getRectangles())
+			{
+				buffer.setClip(rect.x, rect.y, rect.width, rect.height);
+				buffer.blit(screen);
+			}
+			buffer.clearClip();
+		}else
+		if(!resized)
+		{
+			buffer.blit(screen);
+		}
+		buffer.setDirtyTracking(partialPresent);
+		buffer.clearDirty();
 		
 		//paint
 		paint(buffer);
+		if(!partial)
+		{
+			//so the next partial frame copies all of it
+			buffer.markDirty(0, 0, buffer.getWidth(), buffer.getHeight());
+		}
 		
 		//swap the buffers
 		swapBuffers();
 		
-		//repaint the frame
-		frame.repaint();
+		//repaint what changed
+		if(partial)
+		{
+			present(screen.getDirtyRegion());
+		}else
+		{
+			frame.repaint();
+		}
 		//poll the frame rate ticker
 		FrameRate.poll();
+		//recycle the frame's temporaries
+		ReferencePool.clearAll();
 	}
 	
 	/**
@@ -236,17 +300,70 @@ public abstract class Core
 	}
 	
 	/**
-	 * Paints the frame.
+	 * Asks the frame to repaint the given area of the screen, or all of it if the area covers more than fullFrameThreshold.
+	 * @param dirty The area drawn this frame.
+	 */
+	private void present(DirtyRegion dirty)
+	{
+		if(dirty.isEmpty())
+		{
+			return;
+		}
+		if(dirty.getArea() > fullFrameThreshold * screen.getWidth() * screen.getHeight())
+		{
+			frame.repaint();
+			return;
+		}
+		int x = screenX(screen);
+		int y = screenY(screen);
+		for(Rectangle rect : dirty.getRectangles())
+		{
+			frame.repaint(x + rect.x, y + rect.y, rect.width, rect.height);
+		}
+	}
+	
+	/**
+	 * @return The x location in the frame the given screen is centered at.
+	 */
+	private int screenX(Image image)
+	{
+		Insets ins = frame.getInsets();
+		return ins.left + ((frame.getWidth() - ins.left - ins.right) - image.getWidth()) / 2;
+	}
+	
+	/**
+	 * @return The y location in the frame the given screen is centered at.
+	 */
+	private int screenY(Image image)
+	{
+		Insets ins = frame.getInsets();
+		return ins.top + ((frame.getHeight() - ins.top - ins.bottom) - image.getHeight()) / 2;
+	}
+	
+	/**
+	 * Paints the frame. Only copies the part of the screen inside the graphics' clip.
 	 * @param g The graphics to draw to.
 	 */
 	protected synchronized void paintFrame(Graphics g)
 	{
 		if(screen != null)
 		{
-			Insets ins = frame.getInsets();
-			int x = ((frame.getWidth() - ins.left - ins.right) - screen.getWidth()) / 2;
-			int y = ((frame.getHeight() - ins.top - ins.bottom) - screen.getHeight()) / 2;
-			g.drawImage(screen.getBufferImage(), frame.getInsets().left + x, frame.getInsets().top + y, null);
+			int x = screenX(screen);
+			int y = screenY(screen);
+			Rectangle clip = g.getClipBounds();
+			if(clip == null)
+			{
+				g.drawImage(screen.getBufferImage(), x, y, null);
+			}else
+			{
+				Rectangle area = clip.intersection(new Rectangle(x, y, screen.getWidth(), screen.getHeight()));
+				if(!area.isEmpty())
+				{
+					int sx = area.x - x;
+					int sy = area.y - y;
+					g.drawImage(screen.getBufferImage(), area.x, area.y, area.x + area.width, area.y + area.height, sx, sy, sx + area.width, sy + area.height, null);
+				}
+			}
 		}
 	}
 }
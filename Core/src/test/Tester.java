@@ -103,7 +103,7 @@ public class Tester extends Core
 	@Override
 	public void paint(Image image)
 	{
-		image.fill(Color.BLACK);
+		image.fill(Color.BLACK, getRenderPool());
 		image.fillCircle((int)(X + (image.getWidth() / 2)), (int)(Y + (image.getHeight() / 2)), (int)radius, color);
 	}
 }
@@ -7,6 +7,7 @@ import render.node.Node;
 import render.node.PeriodicNode;
 import util.DefaultDistortions;
 import util.Distortion;
+import util.concurrent.TaskHandle;
 import util.concurrent.ThreadPool;
 
 /**
@@ -52,32 +53,56 @@ public class DistortionFilter extends Filter implements PeriodicNode
 	}
 
 	@Override
-	public void fill(Image array, ThreadPool pool)
+	public void fill(Image array, final ThreadPool pool)
 	{
 		//create temp images
-		NoiseImage base = new NoiseImage(array.getWidth(), array.getHeight());
-		NoiseImage distort = new NoiseImage(array.getWidth(), array.getHeight());
+		final NoiseImage base = new NoiseImage(array.getWidth(), array.getHeight());
+		final NoiseImage distort = new NoiseImage(array.getWidth(), array.getHeight());
 		
-		//fill the input image
-		if(inputs[0] instanceof MTNode)
-		{
-			((MTNode)inputs[0]).fill(base, pool);
-		}else
+		if(pool == null)
 		{
 			inputs[0].fill(base);
-		}
-		
-		//
-		if(inputs[1] instanceof MTNode)
-		{
-			((MTNode)inputs[1]).fill(distort, pool);
+			inputs[1].fill(distort);
 		}else
 		{
-			inputs[1].fill(distort);
+			//the inputs are independent, so fill them side by side
+			TaskHandle baseFill = pool.submit(new InputTask(inputs[0], base, pool));
+			TaskHandle distortFill = pool.submit(new InputTask(inputs[1], distort, pool));
+			baseFill.waitFor();
+			distortFill.waitFor();
 		}
 		
 		distort.normalize();
 		
 		distortion.distort(base, distort, array, amplitude);
 	}
+	
+	/**
+	 * Fills an input node, on the pool if it supports it.
+	 */
+	private static class InputTask implements Runnable
+	{
+		private final Node input;
+		private final Image output;
+		private final ThreadPool pool;
+		
+		public InputTask(Node in, Image out, ThreadPool p)
+		{
+			input = in;
+			output = out;
+			pool = p;
+		}
+		
+		@Override
+		public void run()
+		{
+			if(input instanceof MTNode)
+			{
+				((MTNode)input).fill(output, pool);
+			}else
+			{
+				input.fill(output);
+			}
+		}
+	}
 }
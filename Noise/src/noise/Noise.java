@@ -38,18 +38,7 @@ public abstract class Noise implements Node, MTNode
 			//for all pixels
 			for(int x = 0; x < image.getWidth(); x++)
 			{
-				for(int y = 0; y < image.getHeight(); y++)
-				{
-					//set to value
-					if(image.hasColor())
-					{
-						image.set(x, y, getValue(x, y));
-					}else
-					if(image.hasGrey())
-					{
-						image.set(x, y, getValue(x, y));
-					}
-				}
+				fillColumn(image, x);
 			}
 		}else
 		{
@@ -59,15 +48,37 @@ public abstract class Noise implements Node, MTNode
 				@Override
 				public void run(int x)
 				{
-					for(int y = 0; y < image.getHeight(); y++)
-					{
-						//set to value
-						image.set(x, y, getValue(x, y));
-					}
+					fillColumn(image, x);
 				}
 			});
 			//start pool and wait for completion
 			pool.startAndWait();
 		}
 	}
+	
+	/**
+	 * Sets a column of the given image to the noise value, through the primitive accessors.
+	 * Color images get a value per channel, others the grey value.
+	 * @param image The image.
+	 * @param x The column.
+	 */
+	private void fillColumn(Image image, int x)
+	{
+		if(image.hasColor())
+		{
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				image.setChannel(x, y, Image.RED, (float)getValue(x, y, 1));
+				image.setChannel(x, y, Image.GREEN, (float)getValue(x, y, 2));
+				image.setChannel(x, y, Image.BLUE, (float)getValue(x, y, 3));
+			}
+		}else
+		if(image.hasGrey())
+		{
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				image.setGrey(x, y, getValue(x, y, 0));
+			}
+		}
+	}
 }
@@ -0,0 +1,242 @@
+package render.image;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 
+ * Saves Images on background threads, as saveImage() would: raw images for files ending in RawImage.EXTENSION, pngs otherwise.
+ * The queue is bounded, write() blocks once it is full, so a producer can't get more than the queue's worth of images ahead of the disk.
+ * Images aren't copied, they must not be changed until flush() returns. Each thread keeps one PngEncoder for all of its images.
+ * The threads are daemons, writes still queued when the program exits are lost, so flush() or close() first.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class AsyncImageWriter implements Closeable
+{
+	/**
+	 * Queued in place of a job to stop a thread.
+	 */
+	private static final Job STOP = new Job(null, null);
+	
+	private final ArrayBlockingQueue<Job> queue;
+	private final Thread[] threads;
+	private final int level;
+	
+	/**
+	 * Guards outstanding and failure.
+	 */
+	private final Object lock = new Object();
+	
+	/**
+	 * Jobs queued or being written.
+	 */
+	private int outstanding;
+	
+	/**
+	 * The first failure since the last flush().
+	 */
+	private IOException failure;
+	
+	private volatile boolean closed;
+	
+	/**
+	 * Creates a new writer.
+	 * @param numThreads The number of writing threads.
+	 * @param capacity The number of images that can wait in the queue before write() blocks.
+	 * @param compression The png compression level, PngEncoder.STORE (0) to PngEncoder.BEST (9).
+	 */
+	public AsyncImageWriter(int numThreads, int capacity, int compression)
+	{
+		if(compression < PngEncoder.STORE || compression > PngEncoder.BEST)
+		{
+			throw new IllegalArgumentException("Compression level " + compression + " not in " + PngEncoder.STORE + "-" + PngEncoder.BEST);
+		}
+		queue = new ArrayBlockingQueue<Job>(capacity);
+		level = compression;
+		threads = new Thread[numThreads];
+		for(int i = 0; i < numThreads; i++)
+		{
+			threads[i] = new Thread(new Worker(), "Image Writer " + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+	}
+	
+	/**
+	 * Queues an image to be saved, blocking while the queue is full.
+	 * @param file The file to save to.
+	 * @param image The image, left unchanged until flush() returns.
+	 * @throws InterruptedIOException If interrupted while waiting for room.
+	 */
+	public void write(File file, Image image) throws InterruptedIOException
+	{
+		if(closed)
+		{
+			throw new IllegalStateException("AsyncImageWriter is closed");
+		}
+		synchronized(lock)
+		{
+			outstanding++;
+		}
+		try
+		{
+			queue.put(new Job(file, image));
+		}catch(InterruptedException ex)
+		{
+			finished(null);
+			throw new InterruptedIOException("Interrupted waiting to queue " + file);
+		}
+	}
+	
+	/**
+	 * @return The number of images waiting in the queue, not counting ones being written.
+	 */
+	public int getQueued()
+	{
+		return queue.size();
+	}
+	
+	/**
+	 * Waits for every queued image to be written.
+	 * @throws IOException The first failure since the last flush(), with any others suppressed.
+	 */
+	public void flush() throws IOException
+	{
+		IOException ex;
+		synchronized(lock)
+		{
+			while(outstanding > 0)
+			{
+				try
+				{
+					lock.wait();
+				}catch(InterruptedException e)
+				{
+					throw new InterruptedIOException("Interrupted waiting for writes");
+				}
+			}
+			ex = failure;
+			failure = null;
+		}
+		if(ex != null)
+		{
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Writes everything queued, then stops the threads.
+	 * @throws IOException The first failure since the last flush(), with any others suppressed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if(closed)
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			flush();
+		}finally
+		{
+			try
+			{
+				for(int i = 0; i < threads.length; i++)
+				{
+					queue.put(STOP);
+				}
+			}catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Counts a job done, recording its failure if it had one.
+	 */
+	private void finished(IOException ex)
+	{
+		synchronized(lock)
+		{
+			if(ex != null)
+			{
+				if(failure == null)
+				{
+					failure = ex;
+				}else
+				{
+					failure.addSuppressed(ex);
+				}
+			}
+			outstanding--;
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * An image and where to save it.
+	 */
+	private static class Job
+	{
+		private final File file;
+		private final Image image;
+		
+		private Job(File f, Image img)
+		{
+			file = f;
+			image = img;
+		}
+	}
+	
+	private class Worker implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			PngEncoder encoder = new PngEncoder(level);
+			try
+			{
+				while(true)
+				{
+					Job job = queue.take();
+					if(job == STOP)
+					{
+						return;
+					}
+					IOException ex = null;
+					try
+					{
+						if(RawImage.isRawFile(job.file))
+						{
+							RawImage.write(job.file, job.image);
+						}else
+						{
+							encoder.write(job.file, job.image);
+						}
+					}catch(IOException e)
+					{
+						ex = e;
+					}catch(RuntimeException e)
+					{
+						ex = new IOException("Failed to write " + job.file, e);
+					}
+					finished(ex);
+				}
+			}catch(InterruptedException ex)
+			{
+				//interrupted from outside, stop
+			}finally
+			{
+				encoder.end();
+			}
+		}
+	}
+}
@@ -25,7 +25,8 @@ public final class BackedImage extends Image
 	 */
 	protected byte[] data;
 	
-	private boolean usesAlpha = false;
+	//no initializer, the copy constructor sets it during super()
+	boolean usesAlpha;
 	
 	//temp color for getting
 	private ByteARGB tempColor = new ByteARGB();
@@ -134,23 +135,86 @@ public final class BackedImage extends Image
 		return buffer;
 	}
 	
-	//draw methods
+	@Override
+	public int getARGB(int x, int y)
+	{
+		int i = (x + (y * width)) * 4;
+		return ((data[i] & 0xFF) << 24) | ((data[i + 3] & 0xFF) << 16) | ((data[i + 2] & 0xFF) << 8) | (data[i + 1] & 0xFF);
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		int i = (x + (y * width)) * 4;
+		data[i] = (byte)(argb >>> 24);
+		data[i + 3] = (byte)(argb >>> 16);
+		data[i + 2] = (byte)(argb >>> 8);
+		data[i + 1] = (byte)argb;
+		usesAlpha |= (argb >>> 24) != 0xFF;
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		int i = (x + (y * width)) * 4;
+		return (((data[i + 3] & 0xFF) + (data[i + 2] & 0xFF) + (data[i + 1] & 0xFF)) / 3) / 255D;
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		int i = (x + (y * width)) * 4;
+		byte g = (byte)toByte(grey);
+		data[i] = (byte)0xFF;
+		data[i + 3] = g;
+		data[i + 2] = g;
+		data[i + 1] = g;
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		return (data[((x + (y * width)) * 4) + byteOffset(channel)] & 0xFF) / 255F;
+	}
 	
-	public void blit(Image image)
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		data[((x + (y * width)) * 4) + byteOffset(channel)] = (byte)toByte(value);
+		if(channel == ALPHA)
+		{
+			usesAlpha |= value != 1;
+		}
+	}
+	
+	/**
+	 * @return The offset of the given channel within a pixel's ABGR bytes.
+	 */
+	private static int byteOffset(int channel)
+	{
+		return channel == ALPHA ? 0 : 4 - channel;
+	}
+	
+	@Override
+	protected void prepareConcurrentWrites(boolean alpha)
+	{
+		//set once up front, so threads never race to read and write the flag
+		if(alpha)
+		{
+			usesAlpha = true;
+		}
+	}
+	
+	@Override
+	public void copySpan(Image image, int srcX, int srcY, int x, int y, int length)
 	{
 		if(image instanceof BackedImage)
 		{
-			view.clear();
-			if(view.visible())
-			{
-				for(int y = view.minY; y <= view.maxY; y++)
-				{
-					System.arraycopy(((BackedImage)image).data, view.minX + (image.width * y), data, view.minX + (width * y), view.maxX - view.minX + 1);
-				}
-			}
+			System.arraycopy(((BackedImage)image).data, (srcX + (srcY * image.width)) * 4, data, (x + (y * width)) * 4, length * 4);
+			usesAlpha |= image.hasAlpha();
 		}else
 		{
-			super.blit(image);
+			super.copySpan(image, srcX, srcY, x, y, length);
 		}
 	}
 }
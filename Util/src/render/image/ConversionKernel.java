@@ -0,0 +1,25 @@
+package render.image;
+
+/**
+ * 
+ * Converts spans of pixels from one Image type to another, registered with Conversions for a source and destination class.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public interface ConversionKernel
+{
+	/**
+	 * Converts a horizontal span of pixels, as dest.copySpan() would. Skips clip checking.
+	 * Kernels may be run on several rows at once, so must only touch the given span.
+	 * @param source The source image.
+	 * @param srcX The first x location in the source.
+	 * @param srcY The y location in the source.
+	 * @param dest The destination image.
+	 * @param x The first x location in the destination.
+	 * @param y The y location in the destination.
+	 * @param length The number of pixels.
+	 * @param dither True to ordered dither values quantized to 8 bits, ignored by kernels that don't quantize.
+	 */
+	public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither);
+}
@@ -0,0 +1,167 @@
+package render.image;
+
+import java.util.concurrent.ConcurrentHashMap;
+import util.concurrent.ArrayTask;
+import util.concurrent.ThreadPool;
+
+/**
+ * 
+ * The registry of ConversionKernels, by source and destination class. Image.blit(), and with it the copy constructors, converts through here.
+ * Every pair of the built in types in DefaultConversions is registered up front. Pairs are matched by exact class,
+ * anything not registered, including every same type pair, falls back to dest.copySpan().
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class Conversions
+{
+	/**
+	 * The kernels, by source class then destination class.
+	 */
+	private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, ConversionKernel>> kernels = new ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, ConversionKernel>>();
+	
+	/**
+	 * Copies with dest.copySpan(), used for pairs without a kernel.
+	 */
+	private static final ConversionKernel COPY_SPAN = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			dest.copySpan(source, srcX, srcY, x, y, length);
+		}
+	};
+	
+	/**
+	 * Whether blit() dithers.
+	 */
+	private static volatile boolean dithering = false;
+	
+	static
+	{
+		register(DoubleImage.class, NoiseImage.class, DefaultConversions.DOUBLE_TO_NOISE);
+		register(DoubleImage.class, MaskImage.class, DefaultConversions.DOUBLE_TO_MASK);
+		register(DoubleImage.class, BackedImage.class, DefaultConversions.DOUBLE_TO_BACKED);
+		register(DoubleImage.class, IntBackedImage.class, DefaultConversions.DOUBLE_TO_INT);
+		register(NoiseImage.class, DoubleImage.class, DefaultConversions.NOISE_TO_DOUBLE);
+		register(NoiseImage.class, MaskImage.class, DefaultConversions.NOISE_TO_MASK);
+		register(NoiseImage.class, BackedImage.class, DefaultConversions.NOISE_TO_BACKED);
+		register(NoiseImage.class, IntBackedImage.class, DefaultConversions.NOISE_TO_INT);
+		register(MaskImage.class, DoubleImage.class, DefaultConversions.MASK_TO_DOUBLE);
+		register(MaskImage.class, NoiseImage.class, DefaultConversions.MASK_TO_NOISE);
+		register(MaskImage.class, BackedImage.class, DefaultConversions.MASK_TO_BACKED);
+		register(MaskImage.class, IntBackedImage.class, DefaultConversions.MASK_TO_INT);
+		register(BackedImage.class, DoubleImage.class, DefaultConversions.BACKED_TO_DOUBLE);
+		register(BackedImage.class, NoiseImage.class, DefaultConversions.BACKED_TO_NOISE);
+		register(BackedImage.class, MaskImage.class, DefaultConversions.BACKED_TO_MASK);
+		register(BackedImage.class, IntBackedImage.class, DefaultConversions.BACKED_TO_INT);
+		register(IntBackedImage.class, DoubleImage.class, DefaultConversions.INT_TO_DOUBLE);
+		register(IntBackedImage.class, NoiseImage.class, DefaultConversions.INT_TO_NOISE);
+		register(IntBackedImage.class, MaskImage.class, DefaultConversions.INT_TO_MASK);
+		register(IntBackedImage.class, BackedImage.class, DefaultConversions.INT_TO_BACKED);
+	}
+	
+	private Conversions()
+	{
+	}
+	
+	/**
+	 * Registers a kernel, replacing any kernel already registered for the pair.
+	 * @param from The exact source class.
+	 * @param to The exact destination class.
+	 * @param kernel The kernel.
+	 */
+	public static void register(Class<? extends Image> from, Class<? extends Image> to, ConversionKernel kernel)
+	{
+		ConcurrentHashMap<Class<?>, ConversionKernel> map = kernels.get(from);
+		if(map == null)
+		{
+			kernels.putIfAbsent(from, new ConcurrentHashMap<Class<?>, ConversionKernel>());
+			map = kernels.get(from);
+		}
+		map.put(to, kernel);
+	}
+	
+	/**
+	 * Finds the kernel for a pair of classes.
+	 * @param from The source class.
+	 * @param to The destination class.
+	 * @return The kernel, never null. Unregistered pairs get one that calls copySpan().
+	 */
+	public static ConversionKernel find(Class<? extends Image> from, Class<? extends Image> to)
+	{
+		ConcurrentHashMap<Class<?>, ConversionKernel> map = kernels.get(from);
+		ConversionKernel kernel = map == null ? null : map.get(to);
+		return kernel == null ? COPY_SPAN : kernel;
+	}
+	
+	/**
+	 * Sets whether blit() ordered dithers when quantizing to 8 bits. Off by default.
+	 * @param dither True to dither.
+	 */
+	public static void setDithering(boolean dither)
+	{
+		dithering = dither;
+	}
+	
+	/**
+	 * @return True if blit() dithers.
+	 */
+	public static boolean isDithering()
+	{
+		return dithering;
+	}
+	
+	/**
+	 * Converts the source into the destination's clip bounds, as blit() does.
+	 * @param source The source image.
+	 * @param dest The destination image.
+	 */
+	public static void convert(Image source, Image dest)
+	{
+		convert(source, dest, dithering, null);
+	}
+	
+	/**
+	 * Converts the source into the destination's clip bounds, as blit() does.
+	 * @param source The source image.
+	 * @param dest The destination image.
+	 * @param dither True to ordered dither when quantizing to 8 bits.
+	 * @param pool The pool to split rows across, or null to convert on this thread.
+	 * Images under Image.PARALLEL_THRESHOLD pixels are always converted on this thread.
+	 */
+	public static void convert(Image source, final Image dest, final boolean dither, ThreadPool pool)
+	{
+		//read only views share their image's kernels, writes into one still go through copySpan() and fail
+		final Image src = source instanceof ReadOnlyImage ? ((ReadOnlyImage)source).getImage() : source;
+		final int minX = dest.clipX1;
+		final int maxX = Math.min(dest.clipX2, src.getWidth() - 1);
+		int minY = dest.clipY1;
+		int maxY = Math.min(dest.clipY2, src.getHeight() - 1);
+		if(maxX < minX || maxY < minY)
+		{
+			return;
+		}
+		final ConversionKernel kernel = find(src.getClass(), dest.getClass());
+		final int length = maxX - minX + 1;
+		dest.markDirty(minX, minY, length, maxY - minY + 1);
+		if(pool == null || (long)length * (maxY - minY + 1) < Image.PARALLEL_THRESHOLD)
+		{
+			for(int y = minY; y <= maxY; y++)
+			{
+				kernel.convert(src, minX, y, dest, minX, y, length, dither);
+			}
+		}else
+		{
+			dest.prepareConcurrentWrites(src.hasAlpha());
+			pool.runGlobalTask(new ArrayTask(minY, maxY)
+			{
+				@Override
+				public void run(int y)
+				{
+					kernel.convert(src, minX, y, dest, minX, y, length, dither);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package render.image;
+
+import java.util.Arrays;
+import util.pool.ScratchPool;
+
+/**
+ * 
+ * Contains the ConversionKernels between each pair of the built in image types, NoiseImage, MaskImage, DoubleImage, BackedImage and IntBackedImage.
+ * Conversions registers all of these. Pairs of the same type aren't here, those copy with dest.copySpan().
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class DefaultConversions
+{
+	/**
+	 * 4x4 ordered dither thresholds, in 0-1 of an 8 bit step.
+	 */
+	private static final float[] BAYER = new float[16];
+	
+	static
+	{
+		int[] matrix = {0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1, 9, 15, 7, 13, 5};
+		for(int i = 0; i < 16; i++)
+		{
+			BAYER[i] = (matrix[i] + .5F) / 16F;
+		}
+	}
+	
+	/**
+	 * Quantizes a 0-1 value to 8 bits, as Image.toByte() does unless dithering.
+	 * @param value The value.
+	 * @param x The x location of the pixel, picks the dither threshold.
+	 * @param y The y location of the pixel, picks the dither threshold.
+	 * @param dither True to ordered dither.
+	 * @return The byte, 0-255.
+	 */
+	static int quantize(double value, int x, int y, boolean dither)
+	{
+		if(!dither)
+		{
+			return Image.toByte(value);
+		}
+		int q = (int)((value * 255) + BAYER[(x & 3) | ((y & 3) << 2)]);
+		return q < 0 ? 0 : (q > 255 ? 255 : q);
+	}
+	
+	/**
+	 * Copies the alpha of a span through the channel rows, so the destination decides whether it needs an alpha plane.
+	 */
+	private static void copyAlpha(Image source, int srcX, int srcY, Image dest, int x, int y, int length)
+	{
+		ScratchPool scratch = ScratchPool.get();
+		float[] row = scratch.borrowFloats(length);
+		source.getRow(srcX, srcY, length, Image.ALPHA, row, 0);
+		dest.setRow(x, y, length, Image.ALPHA, row, 0);
+		scratch.release(row);
+	}
+	
+	//from DoubleImage
+	
+	public static final ConversionKernel DOUBLE_TO_NOISE = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			DoubleImage src = (DoubleImage)source;
+			double[] red = src.getRedPlane();
+			double[] green = src.getGreenPlane();
+			double[] blue = src.getBluePlane();
+			double[] values = ((NoiseImage)dest).getValues();
+			int from = srcX + (srcY * src.width);
+			int to = x + (y * dest.width);
+			for(int i = 0; i < length; i++)
+			{
+				values[to + i] = (red[from + i] + green[from + i] + blue[from + i]) / 3D;
+			}
+		}
+	};
+	
+	public static final ConversionKernel DOUBLE_TO_MASK = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			double[] alpha = ((DoubleImage)source).getAlphaPlane();
+			double[] values = ((MaskImage)dest).getValues();
+			int to = x + (y * dest.width);
+			if(alpha == null)
+			{
+				Arrays.fill(values, to, to + length, 1);
+			}else
+			{
+				System.arraycopy(alpha, srcX + (srcY * source.width), values, to, length);
+			}
+		}
+	};
+	
+	public static final ConversionKernel DOUBLE_TO_BACKED = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			DoubleImage src = (DoubleImage)source;
+			BackedImage dst = (BackedImage)dest;
+			double[] red = src.getRedPlane();
+			double[] green = src.getGreenPlane();
+			double[] blue = src.getBluePlane();
+			double[] alpha = src.getAlphaPlane();
+			byte[] data = dst.data;
+			int from = srcX + (srcY * src.width);
+			int to = (x + (y * dst.width)) * 4;
+			for(int i = 0; i < length; i++, to += 4)
+			{
+				data[to] = (byte)(alpha == null ? 0xFF : quantize(alpha[from + i], x + i, y, dither));
+				data[to + 1] = (byte)quantize(blue[from + i], x + i, y, dither);
+				data[to + 2] = (byte)quantize(green[from + i], x + i, y, dither);
+				data[to + 3] = (byte)quantize(red[from + i], x + i, y, dither);
+			}
+			//only ever set, prepareConcurrentWrites() already did for parallel converts
+			if(alpha != null)
+			{
+				dst.usesAlpha = true;
+			}
+		}
+	};
+	
+	public static final ConversionKernel DOUBLE_TO_INT = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			DoubleImage src = (DoubleImage)source;
+			double[] red = src.getRedPlane();
+			double[] green = src.getGreenPlane();
+			double[] blue = src.getBluePlane();
+			double[] alpha = src.getAlphaPlane();
+			int[] data = ((IntBackedImage)dest).data;
+			int from = srcX + (srcY * src.width);
+			int to = x + (y * dest.width);
+			if(!dither)
+			{
+				IntKernels.pack(alpha, red, green, blue, from, data, to, length);
+				return;
+			}
+			for(int i = 0; i < length; i++)
+			{
+				int a = alpha == null ? 0xFF : quantize(alpha[from + i], x + i, y, dither);
+				data[to + i] = (a << 24) | (quantize(red[from + i], x + i, y, dither) << 16) | (quantize(green[from + i], x + i, y, dither) << 8) | quantize(blue[from + i], x + i, y, dither);
+			}
+		}
+	};
+	
+	//from NoiseImage
+	
+	public static final ConversionKernel NOISE_TO_DOUBLE = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			DoubleImage dst = (DoubleImage)dest;
+			double[] values = ((NoiseImage)source).getValues();
+			int from = srcX + (srcY * source.width);
+			int to = x + (y * dst.width);
+			System.arraycopy(values, from, dst.getRedPlane(), to, length);
+			System.arraycopy(values, from, dst.getGreenPlane(), to, length);
+			System.arraycopy(values, from, dst.getBluePlane(), to, length);
+			if(dst.getAlphaPlane() != null)
+			{
+				Arrays.fill(dst.getAlphaPlane(), to, to + length, 1);
+			}
+		}
+	};
+	
+	public static final ConversionKernel NOISE_TO_MASK = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			//noise is opaque
+			int to = x + (y * dest.width);
+			Arrays.fill(((MaskImage)dest).getValues(), to, to + length, 1);
+		}
+	};
+	
+	public static final ConversionKernel NOISE_TO_BACKED = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			double[] values = ((NoiseImage)source).getValues();
+			byte[] data = ((BackedImage)dest).data;
+			int from = srcX + (srcY * source.width);
+			int to = (x + (y * dest.width)) * 4;
+			for(int i = 0; i < length; i++, to += 4)
+			{
+				byte grey = (byte)quantize(values[from + i], x + i, y, dither);
+				data[to] = (byte)0xFF;
+				data[to + 1] = grey;
+				data[to + 2] = grey;
+				data[to + 3] = grey;
+			}
+		}
+	};
+	
+	public static final ConversionKernel NOISE_TO_INT = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			double[] values = ((NoiseImage)source).getValues();
+			int[] data = ((IntBackedImage)dest).data;
+			int from = srcX + (srcY * source.width);
+			int to = x + (y * dest.width);
+			for(int i = 0; i < length; i++)
+			{
+				data[to + i] = 0xFF000000 | (quantize(values[from + i], x + i, y, dither) * 0x010101);
+			}
+		}
+	};
+	
+	//from MaskImage, the color of a mask is white
+	
+	public static final ConversionKernel MASK_TO_DOUBLE = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			DoubleImage dst = (DoubleImage)dest;
+			int to = x + (y * dst.width);
+			Arrays.fill(dst.getRedPlane(), to, to + length, 1);
+			Arrays.fill(dst.getGreenPlane(), to, to + length, 1);
+			Arrays.fill(dst.getBluePlane(), to, to + length, 1);
+			copyAlpha(source, srcX, srcY, dest, x, y, length);
+		}
+	};
+	
+	public static final ConversionKernel MASK_TO_NOISE = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			int to = x + (y * dest.width);
+			Arrays.fill(((NoiseImage)dest).getValues(), to, to + length, 1);
+		}
+	};
+	
+	public static final ConversionKernel MASK_TO_BACKED = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			BackedImage dst = (BackedImage)dest;
+			double[] values = ((MaskImage)source).getValues();
+			byte[] data = dst.data;
+			int from = srcX + (srcY * source.width);
+			int to = (x + (y * dst.width)) * 4;
+			boolean alpha = false;
+			for(int i = 0; i < length; i++, to += 4)
+			{
+				data[to] = (byte)quantize(values[from + i], x + i, y, dither);
+				data[to + 1] = (byte)0xFF;
+				data[to + 2] = (byte)0xFF;
+				data[to + 3] = (byte)0xFF;
+				alpha |= values[from + i] != 1;
+			}
+			if(alpha)
+			{
+				dst.usesAlpha = true;
+			}
+		}
+	};
+	
+	public static final ConversionKernel MASK_TO_INT = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			double[] values = ((MaskImage)source).getValues();
+			int[] data = ((IntBackedImage)dest).data;
+			int from = srcX + (srcY * source.width);
+			int to = x + (y * dest.width);
+			for(int i = 0; i < length; i++)
+			{
+				data[to + i] = (quantize(values[from + i], x + i, y, dither) << 24) | 0xFFFFFF;
+			}
+		}
+	};
+	
+	//from BackedImage, ABGR bytes
+	
+	public static final ConversionKernel BACKED_TO_DOUBLE = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			DoubleImage dst = (DoubleImage)dest;
+			byte[] data = ((BackedImage)source).data;
+			double[] red = dst.getRedPlane();
+			double[] green = dst.getGreenPlane();
+			double[] blue = dst.getBluePlane();
+			int from = (srcX + (srcY * source.width)) * 4;
+			int to = x + (y * dst.width);
+			for(int i = 0; i < length; i++, from += 4)
+			{
+				blue[to + i] = (data[from + 1] & 0xFF) / 255D;
+				green[to + i] = (data[from + 2] & 0xFF) / 255D;
+				red[to + i] = (data[from + 3] & 0xFF) / 255D;
+			}
+			copyAlpha(source, srcX, srcY, dest, x, y, length);
+		}
+	};
+	
+	public static final ConversionKernel BACKED_TO_NOISE = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			byte[] data = ((BackedImage)source).data;
+			double[] values = ((NoiseImage)dest).getValues();
+			int from = (srcX + (srcY * source.width)) * 4;
+			int to = x + (y * dest.width);
+			for(int i = 0; i < length; i++, from += 4)
+			{
+				values[to + i] = (((data[from + 1] & 0xFF) + (data[from + 2] & 0xFF) + (data[from + 3] & 0xFF)) / 3) / 255D;
+			}
+		}
+	};
+	
+	public static final ConversionKernel BACKED_TO_MASK = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			byte[] data = ((BackedImage)source).data;
+			double[] values = ((MaskImage)dest).getValues();
+			int from = (srcX + (srcY * source.width)) * 4;
+			int to = x + (y * dest.width);
+			for(int i = 0; i < length; i++, from += 4)
+			{
+				values[to + i] = (data[from] & 0xFF) / 255D;
+			}
+		}
+	};
+	
+	public static final ConversionKernel BACKED_TO_INT = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			byte[] data = ((BackedImage)source).data;
+			int[] pixels = ((IntBackedImage)dest).data;
+			int from = (srcX + (srcY * source.width)) * 4;
+			int to = x + (y * dest.width);
+			for(int i = 0; i < length; i++, from += 4)
+			{
+				pixels[to + i] = ((data[from] & 0xFF) << 24) | ((data[from + 3] & 0xFF) << 16) | ((data[from + 2] & 0xFF) << 8) | (data[from + 1] & 0xFF);
+			}
+		}
+	};
+	
+	//from IntBackedImage, ARGB ints
+	
+	public static final ConversionKernel INT_TO_DOUBLE = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			DoubleImage dst = (DoubleImage)dest;
+			int[] data = ((IntBackedImage)source).data;
+			double[] red = dst.getRedPlane();
+			double[] green = dst.getGreenPlane();
+			double[] blue = dst.getBluePlane();
+			int from = srcX + (srcY * source.width);
+			int to = x + (y * dst.width);
+			for(int i = 0; i < length; i++)
+			{
+				int argb = data[from + i];
+				red[to + i] = ((argb >>> 16) & 0xFF) / 255D;
+				green[to + i] = ((argb >>> 8) & 0xFF) / 255D;
+				blue[to + i] = (argb & 0xFF) / 255D;
+			}
+			copyAlpha(source, srcX, srcY, dest, x, y, length);
+		}
+	};
+	
+	public static final ConversionKernel INT_TO_NOISE = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			int[] data = ((IntBackedImage)source).data;
+			double[] values = ((NoiseImage)dest).getValues();
+			int from = srcX + (srcY * source.width);
+			int to = x + (y * dest.width);
+			for(int i = 0; i < length; i++)
+			{
+				values[to + i] = Image.unpackGrey(data[from + i]);
+			}
+		}
+	};
+	
+	public static final ConversionKernel INT_TO_MASK = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			int[] data = ((IntBackedImage)source).data;
+			double[] values = ((MaskImage)dest).getValues();
+			int from = srcX + (srcY * source.width);
+			int to = x + (y * dest.width);
+			for(int i = 0; i < length; i++)
+			{
+				values[to + i] = (data[from + i] >>> 24) / 255D;
+			}
+		}
+	};
+	
+	public static final ConversionKernel INT_TO_BACKED = new ConversionKernel()
+	{
+		@Override
+		public void convert(Image source, int srcX, int srcY, Image dest, int x, int y, int length, boolean dither)
+		{
+			BackedImage dst = (BackedImage)dest;
+			int[] pixels = ((IntBackedImage)source).data;
+			byte[] data = dst.data;
+			int from = srcX + (srcY * source.width);
+			int to = (x + (y * dst.width)) * 4;
+			boolean alpha = false;
+			for(int i = 0; i < length; i++, to += 4)
+			{
+				int argb = pixels[from + i];
+				data[to] = (byte)(argb >>> 24);
+				data[to + 1] = (byte)argb;
+				data[to + 2] = (byte)(argb >>> 8);
+				data[to + 3] = (byte)(argb >>> 16);
+				alpha |= (argb >>> 24) != 0xFF;
+			}
+			if(alpha)
+			{
+				dst.usesAlpha = true;
+			}
+		}
+	};
+}
@@ -0,0 +1,151 @@
+package render.image;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 
+ * The set of rectangles of an Image written since it was last cleared, gathered from its draw calls.
+ * Rectangles that overlap or touch are merged as they are added, so the set stays disjoint,
+ * and past MAX_RECTANGLES everything collapses into one bounding rectangle.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class DirtyRegion
+{
+	/**
+	 * The most separate rectangles kept before they are merged into their bounds.
+	 */
+	public static final int MAX_RECTANGLES = 16;
+	
+	private final ArrayList<Rectangle> rects = new ArrayList<Rectangle>();
+	
+	/**
+	 * Adds a rectangle, merging it with any it overlaps or touches.
+	 * @param x The x loc.
+	 * @param y The y loc.
+	 * @param w The width.
+	 * @param h The height.
+	 */
+	public void add(int x, int y, int w, int h)
+	{
+		if(w <= 0 || h <= 0)
+		{
+			return;
+		}
+		Rectangle rect = new Rectangle(x, y, w, h);
+		//a merged rectangle can reach ones the original didn't, so go again until nothing merges
+		boolean merged = true;
+		while(merged)
+		{
+			merged = false;
+			for(int i = 0; i < rects.size(); i++)
+			{
+				Rectangle other = rects.get(i);
+				if(touches(rect, other))
+				{
+					rect.add(other);
+					rects.remove(i);
+					merged = true;
+					break;
+				}
+			}
+		}
+		rects.add(rect);
+		if(rects.size() > MAX_RECTANGLES)
+		{
+			Rectangle bounds = getBounds();
+			rects.clear();
+			rects.add(bounds);
+		}
+	}
+	
+	/**
+	 * Adds every rectangle of another region.
+	 * @param region The other region.
+	 */
+	public void add(DirtyRegion region)
+	{
+		for(int i = 0; i < region.rects.size(); i++)
+		{
+			Rectangle rect = region.rects.get(i);
+			add(rect.x, rect.y, rect.width, rect.height);
+		}
+	}
+	
+	/**
+	 * @return The rectangles, disjoint. Not a copy, don't hold on to it across draws.
+	 */
+	public List<Rectangle> getRectangles()
+	{
+		return Collections.unmodifiableList(rects);
+	}
+	
+	/**
+	 * @return The number of rectangles.
+	 */
+	public int size()
+	{
+		return rects.size();
+	}
+	
+	/**
+	 * @return True if nothing is dirty.
+	 */
+	public boolean isEmpty()
+	{
+		return rects.isEmpty();
+	}
+	
+	/**
+	 * @return The number of dirty pixels.
+	 */
+	public long getArea()
+	{
+		long area = 0;
+		for(int i = 0; i < rects.size(); i++)
+		{
+			Rectangle rect = rects.get(i);
+			area += (long)rect.width * rect.height;
+		}
+		return area;
+	}
+	
+	/**
+	 * @return The bounding rectangle of every dirty pixel, empty if nothing is dirty.
+	 */
+	public Rectangle getBounds()
+	{
+		Rectangle bounds = new Rectangle();
+		for(int i = 0; i < rects.size(); i++)
+		{
+			if(i == 0)
+			{
+				bounds.setBounds(rects.get(i));
+			}else
+			{
+				bounds.add(rects.get(i));
+			}
+		}
+		return bounds;
+	}
+	
+	/**
+	 * Marks everything clean.
+	 */
+	public void clear()
+	{
+		rects.clear();
+	}
+	
+	/**
+	 * @return True if the rectangles overlap or share an edge.
+	 */
+	private static boolean touches(Rectangle a, Rectangle b)
+	{
+		return a.x <= b.x + b.width && b.x <= a.x + a.width && a.y <= b.y + b.height && b.y <= a.y + a.height;
+	}
+}
@@ -7,6 +7,7 @@ import render.color.DoubleARGB;
 /**
  * 
  * A DoubleImage is a color Image with double storage.
+ * Each channel is a flat row-major plane, pixel (x, y) is at index x + (y * getStride()).
  * 
  * @author F4113nb34st
  *
@@ -16,22 +17,22 @@ public class DoubleImage extends Image
 	/**
 	 * The red storage.
 	 */
-	private double[][] red;
+	private double[] red;
 	
 	/**
 	 * The green storage.
 	 */
-	private double[][] green;
+	private double[] green;
 	
 	/**
 	 * The blue storage.
 	 */
-	private double[][] blue;
+	private double[] blue;
 	
 	/**
 	 * The alpha storage.
 	 */
-	private double[][] alpha;
+	private double[] alpha;
 	
 	//temp color for getting
 	private DoubleARGB tempColor = new DoubleARGB();
@@ -78,47 +79,97 @@ public class DoubleImage extends Image
 	{
 		width = w;
 		height = h;
-		red = new double[w][h];
-		green = new double[w][h];
-		blue = new double[w][h];
+		red = new double[w * h];
+		green = new double[w * h];
+		blue = new double[w * h];
+		alpha = null;
 		clearClip();
 	}
 	
+	/**
+	 * @return The distance between vertically adjacent pixels in the planes.
+	 */
+	public int getStride()
+	{
+		return width;
+	}
+	
+	/**
+	 * @return The red plane.
+	 */
+	public double[] getRedPlane()
+	{
+		return red;
+	}
+	
+	/**
+	 * @return The green plane.
+	 */
+	public double[] getGreenPlane()
+	{
+		return green;
+	}
+	
+	/**
+	 * @return The blue plane.
+	 */
+	public double[] getBluePlane()
+	{
+		return blue;
+	}
+	
+	/**
+	 * @return The alpha plane, null if this image has no alpha.
+	 */
+	public double[] getAlphaPlane()
+	{
+		return alpha;
+	}
+	
+	/**
+	 * Makes the alpha plane, all opaque, if there isn't one yet.
+	 */
 	private void initAlpha()
 	{
 		if(alpha == null)
 		{
-			alpha = new double[width][height];
-			for(int i = 0; i < alpha.length; i++)
-			{
-				for(int j = 0; j < alpha[0].length; j++)
-				{
-					alpha[i][j] = 1;
-				}
-			}
+			alpha = new double[width * height];
+			Arrays.fill(alpha, 1);
+		}
+	}
+	
+	@Override
+	protected void prepareConcurrentWrites(boolean alpha)
+	{
+		//the alpha plane is made on the first non opaque write
+		if(alpha)
+		{
+			initAlpha();
 		}
 	}
 
 	@Override
 	public void set(int x, int y, Color color)
 	{
-		red[x][y] = color.getRed();
-		green[x][y] = color.getGreen();
-		blue[x][y] = color.getBlue();
+		int i = x + (y * width);
+		red[i] = color.getRed();
+		green[i] = color.getGreen();
+		blue[i] = color.getBlue();
 		if(color.hasAlpha())
 		{
 			initAlpha();
 		}
 		if(alpha != null)
 		{
-			alpha[x][y] = color.getAlpha();
+			alpha[i] = color.getAlpha();
 		}
 	}
 
 	@Override
 	public DoubleARGB get(int x, int y)
 	{
-		tempColor.set(red[x][y], green[x][y], blue[x][y], (alpha != null ? alpha[x][y] : 255));
+		int i = x + (y * width);
+		tempColor.set(red[i], green[i], blue[i], (alpha != null ? alpha[i] : 1));
 		return tempColor;
 	}
 	
@@ -128,34 +179,210 @@ public class DoubleImage extends Image
 		return DoubleARGB.pool.get().set(color);
 	}
 	
-	//draw methods
+	@Override
+	public int getARGB(int x, int y)
+	{
+		int i = x + (y * width);
+		return packARGB(alpha != null ? alpha[i] : 1, red[i], green[i], blue[i]);
+	}
 	
-	public void blit(Image image)
+	@Override
+	public void setARGB(int x, int y, int argb)
 	{
-		if(image instanceof DoubleImage)
+		int i = x + (y * width);
+		red[i] = ((argb >>> 16) & 0xFF) / 255D;
+		green[i] = ((argb >>> 8) & 0xFF) / 255D;
+		blue[i] = (argb & 0xFF) / 255D;
+		if((argb >>> 24) != 0xFF)
 		{
-			DoubleImage dimage = (DoubleImage)image;
-			view.clear();
-			if(view.visible())
-			{
-				if(dimage.hasAlpha())
+			initAlpha();
+		}
+		if(alpha != null)
+		{
+			alpha[i] = (argb >>> 24) / 255D;
+		}
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		int i = x + (y * width);
+		return (red[i] + green[i] + blue[i]) / 3D;
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		int i = x + (y * width);
+		red[i] = grey;
+		green[i] = grey;
+		blue[i] = grey;
+		if(alpha != null)
+		{
+			alpha[i] = 1;
+		}
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		int i = x + (y * width);
+		switch(channel)
+		{
+			case ALPHA:
+				return alpha != null ? (float)alpha[i] : 1;
+			case RED:
+				return (float)red[i];
+			case GREEN:
+				return (float)green[i];
+			case BLUE:
+				return (float)blue[i];
+			default:
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		int i = x + (y * width);
+		switch(channel)
+		{
+			case ALPHA:
+				if(value != 1)
 				{
 					initAlpha();
 				}
-				for(int x = view.minX; x <= view.maxX; x++)
+				if(alpha != null)
 				{
-					System.arraycopy(dimage.red[x], view.minY, red[x], view.minY, view.maxY - view.minY + 1);
-					System.arraycopy(dimage.green[x], view.minY, green[x], view.minY, view.maxY - view.minY + 1);
-					System.arraycopy(dimage.blue[x], view.minY, blue[x], view.minY, view.maxY - view.minY + 1);
-					if(alpha != null)
-					{
-						System.arraycopy(dimage.alpha[x], view.minY, alpha[x], view.minY, view.maxY - view.minY + 1);
-					}
+					alpha[i] = value;
 				}
+				break;
+			case RED:
+				red[i] = value;
+				break;
+			case GREEN:
+				green[i] = value;
+				break;
+			case BLUE:
+				blue[i] = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+	}
+	
+	/**
+	 * @return The plane of the given channel, null for alpha if this image has none.
+	 */
+	private double[] plane(int channel)
+	{
+		switch(channel)
+		{
+			case ALPHA:
+				return alpha;
+			case RED:
+				return red;
+			case GREEN:
+				return green;
+			case BLUE:
+				return blue;
+			default:
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+	}
+	
+	/**
+	 * Makes the alpha plane if any of the given values isn't opaque.
+	 */
+	private void initAlpha(float[] values, int offset, int length)
+	{
+		for(int i = offset; i < offset + length && alpha == null; i++)
+		{
+			if(values[i] != 1)
+			{
+				initAlpha();
 			}
+		}
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		double[] plane = plane(channel);
+		if(plane == null)
+		{
+			Arrays.fill(values, offset, offset + length, 1);
 		}else
 		{
-			super.blit(image);
+			int start = x + (y * width);
+			for(int i = 0; i < length; i++)
+			{
+				values[offset + i] = (float)plane[start + i];
+			}
+		}
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		if(channel == ALPHA)
+		{
+			initAlpha(values, offset, length);
+		}
+		double[] plane = plane(channel);
+		if(plane != null)
+		{
+			int start = x + (y * width);
+			for(int i = 0; i < length; i++)
+			{
+				plane[start + i] = values[offset + i];
+			}
+		}
+	}
+	
+	@Override
+	public void copySpan(Image image, int srcX, int srcY, int x, int y, int length)
+	{
+		if(image instanceof DoubleImage)
+		{
+			DoubleImage dimage = (DoubleImage)image;
+			int from = srcX + (srcY * dimage.width);
+			int to = x + (y * width);
+			if(dimage.alpha != null)
+			{
+				initAlpha();
+				System.arraycopy(dimage.alpha, from, alpha, to, length);
+			}else
+			if(alpha != null)
+			{
+				Arrays.fill(alpha, to, to + length, 1);
+			}
+			System.arraycopy(dimage.red, from, red, to, length);
+			System.arraycopy(dimage.green, from, green, to, length);
+			System.arraycopy(dimage.blue, from, blue, to, length);
+		}else
+		{
+			super.copySpan(image, srcX, srcY, x, y, length);
+		}
+	}
+	
+	//draw methods
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		if(color.hasAlpha())
+		{
+			initAlpha();
+		}
+		int from = x1 + (y * width);
+		int to = x2 + (y * width) + 1;
+		Arrays.fill(red, from, to, color.getRed());
+		Arrays.fill(green, from, to, color.getGreen());
+		Arrays.fill(blue, from, to, color.getBlue());
+		if(alpha != null)
+		{
+			Arrays.fill(alpha, from, to, color.getAlpha());
 		}
 	}
 }
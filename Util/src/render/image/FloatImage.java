@@ -0,0 +1,377 @@
+package render.image;
+
+import java.util.Arrays;
+import render.color.Color;
+import render.color.DoubleARGB;
+import util.pool.ScratchPool;
+
+/**
+ * 
+ * A FloatImage is a color Image with float storage, a DoubleImage at half the memory.
+ * Each channel is a flat row-major plane, pixel (x, y) is at index x + (y * getStride()).
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class FloatImage extends Image
+{
+	/**
+	 * The red storage.
+	 */
+	private float[] red;
+	
+	/**
+	 * The green storage.
+	 */
+	private float[] green;
+	
+	/**
+	 * The blue storage.
+	 */
+	private float[] blue;
+	
+	/**
+	 * The alpha storage.
+	 */
+	private float[] alpha;
+	
+	//temp color for getting
+	private DoubleARGB tempColor = new DoubleARGB();
+	
+	/**
+	 * Creates a new FloatImage of the given size.
+	 * @param w The width.
+	 * @param h The height.
+	 */
+	public FloatImage(int w, int h)
+	{
+		super(w, h);
+	}
+	
+	/**
+	 * Creates a deep copy of the given image.
+	 * @param image The image to copy.
+	 */
+	public FloatImage(Image image)
+	{
+		super(image);
+	}
+	
+	@Override
+	public boolean hasAlpha()
+	{
+		return alpha != null;
+	}
+	
+	@Override
+	public boolean hasColor()
+	{
+		return true;
+	}
+	
+	@Override
+	public boolean hasGrey()
+	{
+		return true;
+	}
+	
+	@Override
+	public void resize(int w, int h)
+	{
+		width = w;
+		height = h;
+		red = new float[w * h];
+		green = new float[w * h];
+		blue = new float[w * h];
+		alpha = null;
+		clearClip();
+	}
+	
+	/**
+	 * @return The distance between vertically adjacent pixels in the planes.
+	 */
+	public int getStride()
+	{
+		return width;
+	}
+	
+	/**
+	 * @return The red plane.
+	 */
+	public float[] getRedPlane()
+	{
+		return red;
+	}
+	
+	/**
+	 * @return The green plane.
+	 */
+	public float[] getGreenPlane()
+	{
+		return green;
+	}
+	
+	/**
+	 * @return The blue plane.
+	 */
+	public float[] getBluePlane()
+	{
+		return blue;
+	}
+	
+	/**
+	 * @return The alpha plane, null if this image has no alpha.
+	 */
+	public float[] getAlphaPlane()
+	{
+		return alpha;
+	}
+	
+	/**
+	 * Makes the alpha plane, all opaque, if there isn't one yet.
+	 */
+	private void initAlpha()
+	{
+		if(alpha == null)
+		{
+			alpha = new float[width * height];
+			Arrays.fill(alpha, 1);
+		}
+	}
+	
+	@Override
+	protected void prepareConcurrentWrites(boolean alpha)
+	{
+		//the alpha plane is made on the first non opaque write
+		if(alpha)
+		{
+			initAlpha();
+		}
+	}
+	
+	@Override
+	public void set(int x, int y, Color color)
+	{
+		int i = x + (y * width);
+		red[i] = (float)color.getRed();
+		green[i] = (float)color.getGreen();
+		blue[i] = (float)color.getBlue();
+		if(color.hasAlpha())
+		{
+			initAlpha();
+		}
+		if(alpha != null)
+		{
+			alpha[i] = (float)color.getAlpha();
+		}
+	}
+	
+	@Override
+	public DoubleARGB get(int x, int y)
+	{
+		int i = x + (y * width);
+		tempColor.set(red[i], green[i], blue[i], (alpha != null ? alpha[i] : 1));
+		return tempColor;
+	}
+	
+	@Override
+	public Color convertColor(Color color)
+	{
+		return DoubleARGB.pool.get().set(color);
+	}
+	
+	@Override
+	public int getARGB(int x, int y)
+	{
+		int i = x + (y * width);
+		return packARGB(alpha != null ? alpha[i] : 1, red[i], green[i], blue[i]);
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		int i = x + (y * width);
+		red[i] = ((argb >>> 16) & 0xFF) / 255F;
+		green[i] = ((argb >>> 8) & 0xFF) / 255F;
+		blue[i] = (argb & 0xFF) / 255F;
+		if((argb >>> 24) != 0xFF)
+		{
+			initAlpha();
+		}
+		if(alpha != null)
+		{
+			alpha[i] = (argb >>> 24) / 255F;
+		}
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		int i = x + (y * width);
+		return (red[i] + green[i] + blue[i]) / 3D;
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		int i = x + (y * width);
+		red[i] = (float)grey;
+		green[i] = (float)grey;
+		blue[i] = (float)grey;
+		if(alpha != null)
+		{
+			alpha[i] = 1;
+		}
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		int i = x + (y * width);
+		switch(channel)
+		{
+			case ALPHA:
+				return alpha != null ? alpha[i] : 1;
+			case RED:
+				return red[i];
+			case GREEN:
+				return green[i];
+			case BLUE:
+				return blue[i];
+			default:
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		int i = x + (y * width);
+		switch(channel)
+		{
+			case ALPHA:
+				if(value != 1)
+				{
+					initAlpha();
+				}
+				if(alpha != null)
+				{
+					alpha[i] = value;
+				}
+				break;
+			case RED:
+				red[i] = value;
+				break;
+			case GREEN:
+				green[i] = value;
+				break;
+			case BLUE:
+				blue[i] = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+	}
+	
+	/**
+	 * @return The plane of the given channel, null for alpha if this image has none.
+	 */
+	private float[] plane(int channel)
+	{
+		switch(channel)
+		{
+			case ALPHA:
+				return alpha;
+			case RED:
+				return red;
+			case GREEN:
+				return green;
+			case BLUE:
+				return blue;
+			default:
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+	}
+	
+	/**
+	 * Makes the alpha plane if any of the given values isn't opaque.
+	 */
+	private void initAlpha(float[] values, int offset, int length)
+	{
+		for(int i = offset; i < offset + length && alpha == null; i++)
+		{
+			if(values[i] != 1)
+			{
+				initAlpha();
+			}
+		}
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		float[] plane = plane(channel);
+		if(plane == null)
+		{
+			Arrays.fill(values, offset, offset + length, 1);
+		}else
+		{
+			System.arraycopy(plane, x + (y * width), values, offset, length);
+		}
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		if(channel == ALPHA)
+		{
+			initAlpha(values, offset, length);
+		}
+		float[] plane = plane(channel);
+		if(plane != null)
+		{
+			System.arraycopy(values, offset, plane, x + (y * width), length);
+		}
+	}
+	
+	@Override
+	public void copySpan(Image image, int srcX, int srcY, int x, int y, int length)
+	{
+		int to = x + (y * width);
+		if(image.hasAlpha())
+		{
+			//may still be all opaque, let setRow decide
+			float[] row = ScratchPool.get().borrowFloats(length);
+			image.getRow(srcX, srcY, length, ALPHA, row, 0);
+			setRow(x, y, length, ALPHA, row, 0);
+			ScratchPool.get().release(row);
+		}else
+		if(alpha != null)
+		{
+			Arrays.fill(alpha, to, to + length, 1);
+		}
+		//the source reads straight into our planes
+		image.getRow(srcX, srcY, length, RED, red, to);
+		image.getRow(srcX, srcY, length, GREEN, green, to);
+		image.getRow(srcX, srcY, length, BLUE, blue, to);
+	}
+	
+	//draw methods
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		if(color.hasAlpha())
+		{
+			initAlpha();
+		}
+		int from = x1 + (y * width);
+		int to = x2 + (y * width) + 1;
+		Arrays.fill(red, from, to, (float)color.getRed());
+		Arrays.fill(green, from, to, (float)color.getGreen());
+		Arrays.fill(blue, from, to, (float)color.getBlue());
+		if(alpha != null)
+		{
+			Arrays.fill(alpha, from, to, (float)color.getAlpha());
+		}
+	}
+}
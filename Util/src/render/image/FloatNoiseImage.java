@@ -0,0 +1,215 @@
+package render.image;
+
+import java.util.Arrays;
+import render.color.Color;
+import render.color.DoubleGrey;
+
+/**
+ * 
+ * A FloatNoiseImage is a greyscale Image with float storage, a NoiseImage at half the memory.
+ * Values are a flat row-major array, pixel (x, y) is at index x + (y * getStride()).
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class FloatNoiseImage extends Image
+{
+	/**
+	 * The float storage.
+	 */
+	private float[] values;
+	
+	//temp color for getting
+	private DoubleGrey tempColor = new DoubleGrey();
+	
+	/**
+	 * Creates a new FloatNoiseImage of the given size.
+	 * @param w The width.
+	 * @param h The height.
+	 */
+	public FloatNoiseImage(int w, int h)
+	{
+		super(w, h);
+	}
+	
+	/**
+	 * Creates a deep copy of the given image.
+	 * @param image The image to copy.
+	 */
+	public FloatNoiseImage(Image image)
+	{
+		super(image);
+	}
+	
+	@Override
+	public boolean hasAlpha()
+	{
+		return false;
+	}
+	
+	@Override
+	public boolean hasColor()
+	{
+		return false;
+	}
+	
+	@Override
+	public boolean hasGrey()
+	{
+		return true;
+	}
+	
+	/**
+	 * @return The greyscale value array, row-major.
+	 */
+	public float[] getValues()
+	{
+		return values;
+	}
+	
+	/**
+	 * @return The distance between vertically adjacent pixels in the value array.
+	 */
+	public int getStride()
+	{
+		return width;
+	}
+	
+	@Override
+	public void resize(int w, int h)
+	{
+		width = w;
+		height = h;
+		values = new float[w * h];
+		clearClip();
+	}
+	
+	public void setValue(int x, int y, double value)
+	{
+		values[x + (y * width)] = (float)value;
+	}
+	
+	public double getValue(int x, int y)
+	{
+		return values[x + (y * width)];
+	}
+	
+	@Override
+	public void set(int x, int y, Color color)
+	{
+		values[x + (y * width)] = (float)color.getGrey();
+	}
+	
+	@Override
+	public DoubleGrey get(int x, int y)
+	{
+		tempColor.set(values[x + (y * width)]);
+		return tempColor;
+	}
+	
+	@Override
+	public Color convertColor(Color color)
+	{
+		return DoubleGrey.pool.get().set(color);
+	}
+	
+	@Override
+	public int getARGB(int x, int y)
+	{
+		return 0xFF000000 | (toByte(values[x + (y * width)]) * 0x010101);
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		values[x + (y * width)] = (float)unpackGrey(argb);
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		return values[x + (y * width)];
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		values[x + (y * width)] = (float)grey;
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		return channel == ALPHA ? 1 : values[x + (y * width)];
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		if(channel != ALPHA)
+		{
+			values[x + (y * width)] = value;
+		}
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		if(channel == ALPHA)
+		{
+			Arrays.fill(values, offset, offset + length, 1);
+		}else
+		{
+			System.arraycopy(this.values, x + (y * width), values, offset, length);
+		}
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		if(channel != ALPHA)
+		{
+			System.arraycopy(values, offset, this.values, x + (y * width), length);
+		}
+	}
+	
+	@Override
+	public void getGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		int start = x + (y * width);
+		for(int i = 0; i < length; i++)
+		{
+			values[offset + i] = this.values[start + i];
+		}
+	}
+	
+	@Override
+	public void setGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		int start = x + (y * width);
+		for(int i = 0; i < length; i++)
+		{
+			this.values[start + i] = (float)values[offset + i];
+		}
+	}
+	
+	@Override
+	public void copySpan(Image image, int srcX, int srcY, int x, int y, int length)
+	{
+		if(image.hasColor())
+		{
+			super.copySpan(image, srcX, srcY, x, y, length);
+		}else
+		{
+			//grey sources have grey in every color channel
+			image.getRow(srcX, srcY, length, RED, values, x + (y * width));
+		}
+	}
+	
+	//draw methods
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		Arrays.fill(values, x1 + (y * width), x2 + (y * width) + 1, (float)color.getGrey());
+	}
+}
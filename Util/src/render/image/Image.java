@@ -2,9 +2,14 @@ package render.image;
 
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
 import math.vector.Vector2D;
 import render.color.Color;
+import render.color.DoubleARGB;
+import render.color.DoubleGrey;
+import render.color.IntARGB;
+import util.concurrent.ArrayTask;
+import util.concurrent.ThreadPool;
+import util.pool.ScratchPool;
 
 /**
  * 
@@ -25,6 +30,31 @@ public abstract class Image
 	 */
 	protected int height;
 	
+	/**
+	 * Channel index of alpha, for getChannel() and setChannel().
+	 */
+	public static final int ALPHA = 0;
+	
+	/**
+	 * Channel index of red, for getChannel() and setChannel().
+	 */
+	public static final int RED = 1;
+	
+	/**
+	 * Channel index of green, for getChannel() and setChannel().
+	 */
+	public static final int GREEN = 2;
+	
+	/**
+	 * Channel index of blue, for getChannel() and setChannel().
+	 */
+	public static final int BLUE = 3;
+	
+	/**
+	 * The fewest pixels worth splitting across a ThreadPool.
+	 */
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+	
 	/**
 	 * Creates a new NoiseImage of the given size.
 	 * @param w The width.
@@ -90,6 +120,305 @@ public abstract class Image
 	 */
 	public abstract Color convertColor(Color color);
 	
+	//primitive accessors, overridden natively by the built in images so hot loops never touch a Color
+	
+	/**
+	 * Returns the given pixel as a packed ARGB int, 8 bits per channel.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @return The packed color.
+	 */
+	public int getARGB(int x, int y)
+	{
+		Color color = get(x, y);
+		return packARGB(color.getAlpha(), color.getRed(), color.getGreen(), color.getBlue());
+	}
+	
+	/**
+	 * Sets the given pixel to a packed ARGB int, 8 bits per channel.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @param argb The packed color.
+	 */
+	public void setARGB(int x, int y, int argb)
+	{
+		IntARGB color = IntARGB.pool.get();
+		color.set(argb);
+		set(x, y, color);
+		color.dispose();
+	}
+	
+	/**
+	 * Returns the grey value of the given pixel, as Color.getGrey() would.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @return The grey value.
+	 */
+	public double getGrey(int x, int y)
+	{
+		return get(x, y).getGrey();
+	}
+	
+	/**
+	 * Sets the given pixel to an opaque grey, as set() with a grey Color would.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @param grey The grey value.
+	 */
+	public void setGrey(int x, int y, double grey)
+	{
+		DoubleGrey color = DoubleGrey.pool.get();
+		color.set(grey);
+		set(x, y, color);
+		color.dispose();
+	}
+	
+	/**
+	 * Returns one channel of the given pixel.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @param channel The channel, ALPHA, RED, GREEN or BLUE.
+	 * @return The channel value.
+	 */
+	public float getChannel(int x, int y, int channel)
+	{
+		Color color = get(x, y);
+		switch(channel)
+		{
+			case ALPHA:
+				return (float)color.getAlpha();
+			case RED:
+				return (float)color.getRed();
+			case GREEN:
+				return (float)color.getGreen();
+			case BLUE:
+				return (float)color.getBlue();
+			default:
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+	}
+	
+	/**
+	 * Sets one channel of the given pixel. Images without the channel ignore it, single channel images share it between red, green and blue.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @param channel The channel, ALPHA, RED, GREEN or BLUE.
+	 * @param value The channel value.
+	 */
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		DoubleARGB color = DoubleARGB.pool.get();
+		color.set(get(x, y));
+		switch(channel)
+		{
+			case ALPHA:
+				color.setAlpha(value);
+				break;
+			case RED:
+				color.setRed(value);
+				break;
+			case GREEN:
+				color.setGreen(value);
+				break;
+			case BLUE:
+				color.setBlue(value);
+				break;
+			default:
+				color.dispose();
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+		set(x, y, color);
+		color.dispose();
+	}
+	
+	//bulk row accessors, row-major spans so generic loops walk memory in order and the built in images can copy whole runs
+	
+	/**
+	 * Reads a horizontal span of pixels as packed ARGB ints.
+	 * @param x The first x location.
+	 * @param y The y location.
+	 * @param length The number of pixels.
+	 * @param argb The array to read into.
+	 * @param offset The index in the array of the first pixel.
+	 */
+	public void getRow(int x, int y, int length, int[] argb, int offset)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			argb[offset + i] = getARGB(x + i, y);
+		}
+	}
+	
+	/**
+	 * Writes a horizontal span of pixels from packed ARGB ints.
+	 * @param x The first x location.
+	 * @param y The y location.
+	 * @param length The number of pixels.
+	 * @param argb The array to write from.
+	 * @param offset The index in the array of the first pixel.
+	 */
+	public void setRow(int x, int y, int length, int[] argb, int offset)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			setARGB(x + i, y, argb[offset + i]);
+		}
+	}
+	
+	/**
+	 * Reads one channel of a horizontal span of pixels, as getChannel() would.
+	 * @param x The first x location.
+	 * @param y The y location.
+	 * @param length The number of pixels.
+	 * @param channel The channel, ALPHA, RED, GREEN or BLUE.
+	 * @param values The array to read into.
+	 * @param offset The index in the array of the first pixel.
+	 */
+	public void getRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			values[offset + i] = getChannel(x + i, y, channel);
+		}
+	}
+	
+	/**
+	 * Writes one channel of a horizontal span of pixels, as setChannel() would.
+	 * @param x The first x location.
+	 * @param y The y location.
+	 * @param length The number of pixels.
+	 * @param channel The channel, ALPHA, RED, GREEN or BLUE.
+	 * @param values The array to write from.
+	 * @param offset The index in the array of the first pixel.
+	 */
+	public void setRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			setChannel(x + i, y, channel, values[offset + i]);
+		}
+	}
+	
+	/**
+	 * Reads the grey values of a horizontal span of pixels, as getGrey() would.
+	 * @param x The first x location.
+	 * @param y The y location.
+	 * @param length The number of pixels.
+	 * @param values The array to read into.
+	 * @param offset The index in the array of the first pixel.
+	 */
+	public void getGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			values[offset + i] = getGrey(x + i, y);
+		}
+	}
+	
+	/**
+	 * Writes a horizontal span of pixels from grey values, as setGrey() would.
+	 * @param x The first x location.
+	 * @param y The y location.
+	 * @param length The number of pixels.
+	 * @param values The array to write from.
+	 * @param offset The index in the array of the first pixel.
+	 */
+	public void setGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			setGrey(x + i, y, values[offset + i]);
+		}
+	}
+	
+	/**
+	 * Copies a horizontal span of pixels from the given image, converting as blit() would. Skips clip checking.
+	 * @param image The source image.
+	 * @param srcX The first x location in the source.
+	 * @param srcY The y location in the source.
+	 * @param x The first x location in this image.
+	 * @param y The y location in this image.
+	 * @param length The number of pixels.
+	 */
+	public void copySpan(Image image, int srcX, int srcY, int x, int y, int length)
+	{
+		ScratchPool scratch = ScratchPool.get();
+		if(!hasColor() && !hasAlpha())
+		{
+			double[] row = scratch.borrowDoubles(length);
+			image.getGreyRow(srcX, srcY, length, row, 0);
+			setGreyRow(x, y, length, row, 0);
+			scratch.release(row);
+		}else
+		{
+			float[] row = scratch.borrowFloats(length);
+			//alpha too, images that store it physically need it set opaque
+			for(int c = ALPHA; c <= BLUE; c++)
+			{
+				image.getRow(srcX, srcY, length, c, row, 0);
+				setRow(x, y, length, c, row, 0);
+			}
+			scratch.release(row);
+		}
+	}
+	
+	/**
+	 * @return A row-major scanline cursor over the clip bounds.
+	 */
+	public Scanline scan()
+	{
+		view.clear();
+		return new Scanline(this, view.minX, view.minY, view.maxX, view.maxY);
+	}
+	
+	/**
+	 * Returns a row-major scanline cursor over the given rectangle, clipped to the clip bounds.
+	 * @param x The x loc.
+	 * @param y The y loc.
+	 * @param w The width.
+	 * @param h The height.
+	 * @return The cursor.
+	 */
+	public Scanline scan(int x, int y, int w, int h)
+	{
+		view.set(x, y, x + w - 1, y + h - 1);
+		return new Scanline(this, view.minX, view.minY, view.maxX, view.maxY);
+	}
+	
+	/**
+	 * Converts a 0-1 value to a byte the same way the Color classes do.
+	 * @param value The value.
+	 * @return The byte, 0-255.
+	 */
+	protected static final int toByte(double value)
+	{
+		return (int)(value * 255) & 0xFF;
+	}
+	
+	/**
+	 * Packs 0-1 channel values into an ARGB int.
+	 */
+	protected static final int packARGB(double a, double r, double g, double b)
+	{
+		return (toByte(a) << 24) | (toByte(r) << 16) | (toByte(g) << 8) | toByte(b);
+	}
+	
+	/**
+	 * @return The 0-1 value of the given channel of a packed ARGB int.
+	 */
+	protected static final float unpackChannel(int argb, int channel)
+	{
+		return ((argb >>> ((3 - channel) << 3)) & 0xFF) / 255F;
+	}
+	
+	/**
+	 * @return The grey value of a packed ARGB int, as IntARGB.getGrey() would.
+	 */
+	protected static final double unpackGrey(int argb)
+	{
+		return ((((argb >>> 16) & 0xFF) + ((argb >>> 8) & 0xFF) + (argb & 0xFF)) / 3) / 255D;
+	}
+	
 	/**
 	 * @return The width of this Image.
 	 */
@@ -107,14 +436,15 @@ public abstract class Image
 	}
 	
 	/**
-	 * Loads an image from the given file.
+	 * Loads an image from the given file. Files ending in RawImage.EXTENSION are read as raw images.
+	 * Images come from ImageCache, shared and read only, copy one to draw on it.
 	 * @param file The file to load from.
 	 */
 	public static final Image loadImage(File file)
 	{
 		try
 		{
-			return new IntBackedImage(ImageIO.read(file));
+			return ImageCache.get(file);
 		} catch(IOException ex)
 		{
 			ex.printStackTrace();
@@ -123,18 +453,27 @@ public abstract class Image
 	}
 	
 	/**
-	 * Loads an image from the given file.
-	 * @param file The file to load from.
+	 * Saves an image to the given file, as a raw image if it ends in RawImage.EXTENSION, otherwise as a png.
+	 * Pngs stream straight from the image's rows through this thread's PngEncoder. AsyncImageWriter saves on background threads.
+	 * @param file The file to save to.
+	 * @param image The image to save.
 	 */
 	public static final void saveImage(File file, Image image)
 	{
-		if(!(image instanceof IntBackedImage))
+		if(RawImage.isRawFile(file))
 		{
-			image = new IntBackedImage(image);
+			try
+			{
+				RawImage.write(file, image);
+			} catch(IOException ex)
+			{
+				ex.printStackTrace();
+			}
+			return;
 		}
 		try
 		{
-			ImageIO.write(((IntBackedImage)image).getBufferImage(), "png", file);
+			PngEncoder.get().write(file, image);
 		} catch(IOException ex)
 		{
 			ex.printStackTrace();
@@ -202,25 +541,206 @@ public abstract class Image
 		setClip(0, 0, width, height);
 	}
 	
+	/**
+	 * The area written by draw calls since it was last cleared, null when not tracking.
+	 */
+	private DirtyRegion dirty;
+	
+	/**
+	 * Sets whether draw calls record the area they write. Off by default.
+	 * The fill methods, blit() and normalize() record what they touch. Writes through set(), setARGB(), setGrey(), setChannel(), the row methods and Graphics drawing on a backed image's buffer don't, callers of those use markDirty() or the region misses them.
+	 * @param track True to track.
+	 */
+	public void setDirtyTracking(boolean track)
+	{
+		if(!track)
+		{
+			dirty = null;
+		}else
+		if(dirty == null)
+		{
+			dirty = new DirtyRegion();
+		}
+	}
+	
+	/**
+	 * @return True if draw calls record the area they write.
+	 */
+	public boolean isDirtyTracking()
+	{
+		return dirty != null;
+	}
+	
+	/**
+	 * @return The area written since the last clearDirty(), null when not tracking.
+	 */
+	public DirtyRegion getDirtyRegion()
+	{
+		return dirty;
+	}
+	
+	/**
+	 * Marks everything clean.
+	 */
+	public void clearDirty()
+	{
+		if(dirty != null)
+		{
+			dirty.clear();
+		}
+	}
+	
+	/**
+	 * Records that the given rectangle was written, clamped to the image. Does nothing when not tracking.
+	 * @param x The x loc.
+	 * @param y The y loc.
+	 * @param w The width.
+	 * @param h The height.
+	 */
+	public void markDirty(int x, int y, int w, int h)
+	{
+		if(dirty != null)
+		{
+			int x1 = Math.max(x, 0);
+			int y1 = Math.max(y, 0);
+			int x2 = Math.min(x + w, width);
+			int y2 = Math.min(y + h, height);
+			dirty.add(x1, y1, x2 - x1, y2 - y1);
+		}
+	}
+	
+	/**
+	 * Records the current view as written. Does nothing when not tracking.
+	 */
+	protected void markViewDirty()
+	{
+		if(dirty != null && view.visible())
+		{
+			dirty.add(view.minX, view.minY, view.maxX - view.minX + 1, view.maxY - view.minY + 1);
+		}
+	}
+	
 	/**
 	 * Copys the given image. Assumes equal sizes.
+	 * Converts with the kernel Conversions has for the pair of types, dithering if Conversions.isDithering().
 	 * @param image The image.
 	 */
 	public void blit(Image image)
 	{
+		Conversions.convert(image, this);
+	}
+	
+	/**
+	 * Copys the given image, striping rows across the pool. Assumes equal sizes.
+	 * @param image The image.
+	 * @param pool The pool, or null to run on this thread. Images under PARALLEL_THRESHOLD pixels always run on this thread.
+	 */
+	public void blit(Image image, ThreadPool pool)
+	{
+		Conversions.convert(image, this, Conversions.isDithering(), pool);
+	}
+	
+	/**
+	 * Called before rows of this image are written from several threads at once.
+	 * Images that make storage lazily on write must make it here, so threads don't race to make their own.
+	 * @param alpha True if the writes may need alpha.
+	 */
+	protected void prepareConcurrentWrites(boolean alpha)
+	{
+	}
+	
+	/**
+	 * Gathers the statistics of the grey values within the clip bounds.
+	 * @return The statistics.
+	 */
+	public ImageStats stats()
+	{
+		return stats(ImageStats.GREY, 0, null);
+	}
+	
+	/**
+	 * Gathers the statistics of one channel within the clip bounds, in one read only pass.
+	 * @param channel The channel, ALPHA, RED, GREEN, BLUE or ImageStats.GREY.
+	 * @param bins The number of histogram bins over 0-1, 0 for no histogram.
+	 * @param pool The pool to split rows across, or null to run on this thread. Images under PARALLEL_THRESHOLD pixels always run on this thread.
+	 * @return The statistics.
+	 */
+	public ImageStats stats(final int channel, final int bins, ThreadPool pool)
+	{
+		final ImageStats stats = new ImageStats(bins);
 		view.clear();
-		view.maxX = Math.max(view.maxX, image.getWidth() - 1);
-		view.maxY = Math.max(view.maxY, image.getHeight() - 1);
 		if(view.visible())
 		{
-			for(int x = view.minX; x <= view.maxX; x++)
+			final int minX = view.minX;
+			final int length = view.maxX - view.minX + 1;
+			if(pool == null || (long)length * (view.maxY - view.minY + 1) < PARALLEL_THRESHOLD)
+			{
+				statsRows(channel, minX, length, view.minY, view.maxY, stats);
+			}else
 			{
-				for(int y = view.minY; y <= view.maxY; y++)
+				pool.runGlobalTask(new ArrayTask(view.minY, view.maxY)
 				{
-					set(x, y, image.get(x, y));
-				}
+					@Override
+					protected void run(int first, int last)
+					{
+						//gather a whole chunk before touching the shared result
+						ImageStats part = new ImageStats(bins);
+						statsRows(channel, minX, length, first, last, part);
+						stats.merge(part);
+					}
+					
+					@Override
+					public void run(int y)
+					{
+						run(y, y);
+					}
+				});
 			}
 		}
+		return stats;
+	}
+	
+	/**
+	 * Gathers the statistics of each channel within the clip bounds.
+	 * @param bins The number of histogram bins over 0-1, 0 for no histogram.
+	 * @param pool The pool to split rows across, or null to run on this thread.
+	 * @return The statistics, indexed by ALPHA, RED, GREEN and BLUE.
+	 */
+	public ImageStats[] channelStats(int bins, ThreadPool pool)
+	{
+		ImageStats[] stats = new ImageStats[4];
+		for(int c = ALPHA; c <= BLUE; c++)
+		{
+			stats[c] = stats(c, bins, pool);
+		}
+		return stats;
+	}
+	
+	/**
+	 * Folds a block of rows into the given statistics.
+	 */
+	private void statsRows(int channel, int minX, int length, int first, int last, ImageStats stats)
+	{
+		ScratchPool scratch = ScratchPool.get();
+		if(channel == ImageStats.GREY)
+		{
+			double[] row = scratch.borrowDoubles(length);
+			for(int y = first; y <= last; y++)
+			{
+				getGreyRow(minX, y, length, row, 0);
+				stats.add(row, length);
+			}
+			scratch.release(row);
+		}else
+		{
+			float[] row = scratch.borrowFloats(length);
+			for(int y = first; y <= last; y++)
+			{
+				getRow(minX, y, length, channel, row, 0);
+				stats.add(row, length);
+			}
+			scratch.release(row);
+		}
 	}
 	
 	/**
@@ -228,36 +748,85 @@ public abstract class Image
 	 */
 	public void normalize()
 	{
-		view.clear();
-		if(view.visible())
+		normalize(null);
+	}
+	
+	/**
+	 * Normalizes the grey values to 0<x<1. One read pass finds the range, one pass rescales in place.
+	 * @param pool The pool to split rows across, or null to run on this thread. Images under PARALLEL_THRESHOLD pixels always run on this thread.
+	 */
+	public void normalize(ThreadPool pool)
+	{
+		ImageStats stats = stats(ImageStats.GREY, 0, pool);
+		final double min = stats.getMin();
+		double max = stats.getMax();
+		//if min == max, then everything is already "normalized"
+		if(stats.getCount() > 0 && min != max)
 		{
-			double min = Double.POSITIVE_INFINITY;
-			double max = Double.NEGATIVE_INFINITY;
-			for(int x = view.minX; x <= view.maxX; x++)
+			final double scale = 1 / (max - min);
+			view.clear();
+			markViewDirty();
+			final int minX = view.minX;
+			final int length = view.maxX - view.minX + 1;
+			if(pool == null || stats.getCount() < PARALLEL_THRESHOLD)
 			{
-				for(int y = view.minY; y <= view.maxY; y++)
-				{
-					min = Math.min(min, get(x, y).getGrey());
-					max = Math.max(max, get(x, y).getGrey());
-				}
-			}
-			//if min == max, then everything is already "normalized"
-			if(min != max)
+				rescaleRows(minX, length, view.minY, view.maxY, min, scale);
+			}else
 			{
-				for(int x = view.minX; x <= view.maxX; x++)
+				pool.runGlobalTask(new ArrayTask(view.minY, view.maxY)
 				{
-					for(int y = view.minY; y <= view.maxY; y++)
+					@Override
+					protected void run(int first, int last)
 					{
-						Color color = get(x, y);
-						double val = color.getGrey();
-						val -= min;
-						val /= (max - min);
-						color.setGrey(val);
-						set(x, y, color);
+						rescaleRows(minX, length, first, last, min, scale);
 					}
+					
+					@Override
+					public void run(int y)
+					{
+						run(y, y);
+					}
+				});
+			}
+		}
+	}
+	
+	/**
+	 * Rescales the grey values of a block of rows. Alpha is left alone, setGrey() would make every pixel opaque,
+	 * so images with color and alpha get the grey written to each color channel instead.
+	 */
+	private void rescaleRows(int minX, int length, int first, int last, double min, double scale)
+	{
+		ScratchPool scratch = ScratchPool.get();
+		double[] row = scratch.borrowDoubles(length);
+		float[] channel = hasAlpha() && hasColor() ? scratch.borrowFloats(length) : null;
+		for(int y = first; y <= last; y++)
+		{
+			getGreyRow(minX, y, length, row, 0);
+			if(channel == null)
+			{
+				for(int i = 0; i < length; i++)
+				{
+					row[i] = (row[i] - min) * scale;
+				}
+				setGreyRow(minX, y, length, row, 0);
+			}else
+			{
+				for(int i = 0; i < length; i++)
+				{
+					channel[i] = (float)((row[i] - min) * scale);
+				}
+				for(int c = RED; c <= BLUE; c++)
+				{
+					setRow(minX, y, length, c, channel, 0);
 				}
 			}
 		}
+		scratch.release(row);
+		if(channel != null)
+		{
+			scratch.release(channel);
+		}
 	}
 	
 	/**
@@ -272,6 +841,7 @@ public abstract class Image
 		view.set(x1, y, x2, y);
 		if(view.visible())
 		{
+			markViewDirty();
 			color = convertColor(color);
 			baseFillXScan(view.minX, view.maxX, view.minY, color);
 			color.dispose();
@@ -290,8 +860,9 @@ public abstract class Image
 		view.set(x, y1, x, y2);
 		if(view.visible())
 		{
+			markViewDirty();
 			color = convertColor(color);
-			baseFillXScan(view.minX, view.minY, view.maxY, color);
+			baseFillYScan(view.minX, view.minY, view.maxY, color);
 			color.dispose();
 		}
 	}
@@ -327,6 +898,16 @@ public abstract class Image
 		fillRect(0, 0, width, height, color);
 	}
 	
+	/**
+	 * Fills with the given color, striping rows across the pool.
+	 * @param color The color.
+	 * @param pool The pool, or null to run on this thread. Areas under PARALLEL_THRESHOLD pixels always run on this thread.
+	 */
+	public void fill(Color color, ThreadPool pool)
+	{
+		fillRect(0, 0, width, height, color, pool);
+	}
+	
 	/**
 	 * Fills the given rectangle with the given color.
 	 * @param x The x loc.
@@ -340,6 +921,7 @@ public abstract class Image
 		view.set(x, y, x + w - 1, y + h - 1);
 		if(view.visible())
 		{
+			markViewDirty();
 			color = convertColor(color);
 			for(int j = view.minY; j <= view.maxY; j++)
 			{
@@ -349,6 +931,39 @@ public abstract class Image
 		}
 	}
 	
+	/**
+	 * Fills the given rectangle with the given color, striping rows across the pool.
+	 * @param x The x loc.
+	 * @param y The y loc.
+	 * @param w The width.
+	 * @param h The height.
+	 * @param color The color.
+	 * @param pool The pool, or null to run on this thread. Areas under PARALLEL_THRESHOLD pixels always run on this thread.
+	 */
+	public void fillRect(int x, int y, int w, int h, Color color, ThreadPool pool)
+	{
+		view.set(x, y, x + w - 1, y + h - 1);
+		if(!parallel(pool))
+		{
+			fillRect(x, y, w, h, color);
+			return;
+		}
+		markViewDirty();
+		final Color col = convertColor(color);
+		final int minX = view.minX;
+		final int maxX = view.maxX;
+		prepareConcurrentWrites(col.hasAlpha());
+		pool.runGlobalTask(new ArrayTask(view.minY, view.maxY)
+		{
+			@Override
+			public void run(int j)
+			{
+				baseFillXScan(minX, maxX, j, col);
+			}
+		});
+		col.dispose();
+	}
+	
 	/**
 	 * Fills the given rectangle with the given color.
 	 * @param coords The coords of the origin.
@@ -375,33 +990,77 @@ public abstract class Image
 		view.set(x, y, x + w - 1, y + h - 1);
 		if(view.visible())
 		{
+			markViewDirty();
 			color = convertColor(color);
 			for(int j = view.minY; j <= view.maxY; j++)
 			{
-				//find edges
-				int left;
-				int right;
-				if(j >= y + yradius && j <= y + h - 1 - yradius)
-				{
-					left = x;
-					right = x + w - 1;
-				}else
-				{
-					double dy = Math.max((y + yradius) - j, j - (y + h - 1 - yradius)) / yradius;
-					double dx = Math.sqrt(1 - dy * dy);
-					left = (int)(x + xradius - (dx * xradius));
-					right = (int)(x + w - 1 - xradius + (dx * xradius));
-				}
-				left = Math.max(left, view.minX);
-				right = Math.min(right, view.maxX);
-				
-				//fill scan
-				baseFillXScan(left, right, j, color);
+				fillRoundedScan(x, y, w, h, xradius, yradius, j, view.minX, view.maxX, color);
 			}
 			color.dispose();
 		}
 	}
 	
+	/**
+	 * Fills the given rounded rectangle with the given color, striping rows across the pool.
+	 * @param x The x loc.
+	 * @param y The y loc.
+	 * @param w The width.
+	 * @param h The height.
+	 * @param xradius The x rounding radius.
+	 * @param yradius The y rounding radius.
+	 * @param color The color.
+	 * @param pool The pool, or null to run on this thread. Areas under PARALLEL_THRESHOLD pixels always run on this thread.
+	 */
+	public void fillRoundedRect(final int x, final int y, final int w, final int h, final double xradius, final double yradius, Color color, ThreadPool pool)
+	{
+		view.set(x, y, x + w - 1, y + h - 1);
+		if(!parallel(pool))
+		{
+			fillRoundedRect(x, y, w, h, xradius, yradius, color);
+			return;
+		}
+		markViewDirty();
+		final Color col = convertColor(color);
+		final int minX = view.minX;
+		final int maxX = view.maxX;
+		prepareConcurrentWrites(col.hasAlpha());
+		pool.runGlobalTask(new ArrayTask(view.minY, view.maxY)
+		{
+			@Override
+			public void run(int j)
+			{
+				fillRoundedScan(x, y, w, h, xradius, yradius, j, minX, maxX, col);
+			}
+		});
+		col.dispose();
+	}
+	
+	/**
+	 * Fills one row of a rounded rectangle, clipped to the given x bounds. Skips view checking.
+	 */
+	private void fillRoundedScan(int x, int y, int w, int h, double xradius, double yradius, int j, int minX, int maxX, Color color)
+	{
+		//find edges
+		int left;
+		int right;
+		if(j >= y + yradius && j <= y + h - 1 - yradius)
+		{
+			left = x;
+			right = x + w - 1;
+		}else
+		{
+			double dy = Math.max((y + yradius) - j, j - (y + h - 1 - yradius)) / yradius;
+			double dx = Math.sqrt(1 - dy * dy);
+			left = (int)(x + xradius - (dx * xradius));
+			right = (int)(x + w - 1 - xradius + (dx * xradius));
+		}
+		left = Math.max(left, minX);
+		right = Math.min(right, maxX);
+		
+		//fill scan
+		baseFillXScan(left, right, j, color);
+	}
+	
 	/**
 	 * Fills the given rounded rectangle with the given color.
 	 * @param coords The coords of the origin.
@@ -427,6 +1086,20 @@ public abstract class Image
 		fillRoundedRect(x, y, w, h, w / 2D, h / 2D, color);
 	}
 	
+	/**
+	 * Fills the given ellipse with the given color, striping rows across the pool.
+	 * @param x The x loc.
+	 * @param y The y loc.
+	 * @param w The width.
+	 * @param h The height.
+	 * @param color The color.
+	 * @param pool The pool, or null to run on this thread. Areas under PARALLEL_THRESHOLD pixels always run on this thread.
+	 */
+	public void fillOval(int x, int y, int w, int h, Color color, ThreadPool pool)
+	{
+		fillRoundedRect(x, y, w, h, w / 2D, h / 2D, color, pool);
+	}
+	
 	/**
 	 * Fills the given ellipse with the given color.
 	 * @param coords The coords of the origin.
@@ -450,6 +1123,27 @@ public abstract class Image
 		fillOval(x - radius, y - radius, radius * 2, radius * 2, color);
 	}
 	
+	/**
+	 * Fills the given circle with the given color, striping rows across the pool.
+	 * @param x The center x loc.
+	 * @param y The center y loc.
+	 * @param radius The radius.
+	 * @param color The color.
+	 * @param pool The pool, or null to run on this thread. Areas under PARALLEL_THRESHOLD pixels always run on this thread.
+	 */
+	public void fillCircle(int x, int y, int radius, Color color, ThreadPool pool)
+	{
+		fillOval(x - radius, y - radius, radius * 2, radius * 2, color, pool);
+	}
+	
+	/**
+	 * @return True if the current view is worth striping across the pool.
+	 */
+	private boolean parallel(ThreadPool pool)
+	{
+		return pool != null && view.visible() && (long)(view.maxX - view.minX + 1) * (view.maxY - view.minY + 1) >= PARALLEL_THRESHOLD;
+	}
+	
 	/**
 	 * Fills the given circle with the given color.
 	 * @param coords The coords of the center.
@@ -0,0 +1,325 @@
+package render.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.imageio.ImageIO;
+import util.concurrent.TaskHandle;
+import util.concurrent.ThreadPool;
+
+/**
+ * 
+ * The process wide cache of decoded images behind loadImage(), keyed by path and last modified time.
+ * Images are shared, so each load hands out its own ReadOnlyImage over the decoded image, keeping clips and other draw state per caller. A file changed on disk is decoded again on its next load.
+ * The least recently loaded images are evicted once the estimated size of the cache passes its byte budget.
+ * Threads loading the same file at once share one decode.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class ImageCache
+{
+	/**
+	 * The byte budget until setBudget() is called.
+	 */
+	public static final long DEFAULT_BUDGET = 64L << 20;
+	
+	/**
+	 * Guards entries, budget and size.
+	 */
+	private static final Object lock = new Object();
+	
+	/**
+	 * The entries by absolute path, least recently used first.
+	 */
+	private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, .75F, true);
+	
+	private static long budget = DEFAULT_BUDGET;
+	
+	/**
+	 * The estimated bytes of every decoded entry.
+	 */
+	private static long size;
+	
+	private ImageCache()
+	{
+	}
+	
+	/**
+	 * Loads an image through the cache, decoding it if it isn't cached or the file has changed since.
+	 * @param file The file.
+	 * @return A new read only view of the shared image.
+	 * @throws IOException If the file can't be read or decoded.
+	 */
+	public static Image get(File file) throws IOException
+	{
+		File f = file.getAbsoluteFile();
+		String key = f.getPath();
+		long modified = f.lastModified();
+		Entry entry;
+		boolean loader = false;
+		synchronized(lock)
+		{
+			entry = entries.get(key);
+			if(entry == null || entry.modified != modified)
+			{
+				if(entry != null)
+				{
+					remove(key);
+				}
+				entry = new Entry(f, modified);
+				entries.put(key, entry);
+				loader = true;
+			}
+		}
+		if(loader)
+		{
+			entry.task.run();
+		}
+		try
+		{
+			Image image = entry.task.get();
+			if(loader)
+			{
+				admit(key, entry);
+			}
+			return new ReadOnlyImage(image);
+		}catch(ExecutionException ex)
+		{
+			synchronized(lock)
+			{
+				//let the next load try again
+				if(entries.get(key) == entry)
+				{
+					entries.remove(key);
+				}
+			}
+			if(ex.getCause() instanceof IOException)
+			{
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException("Failed to load " + file, ex.getCause());
+		}catch(InterruptedException ex)
+		{
+			throw new InterruptedIOException("Interrupted waiting for " + file);
+		}
+	}
+	
+	/**
+	 * Loads an image into the cache on the given pool, so a later get() finds it ready.
+	 * @param file The file.
+	 * @param pool The pool.
+	 * @return The handle of the load. A file that fails to load fails the handle.
+	 */
+	public static TaskHandle prefetch(final File file, ThreadPool pool)
+	{
+		return pool.submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					get(file);
+				}catch(IOException ex)
+				{
+					throw new RuntimeException(ex);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Sets the byte budget, evicting down to it.
+	 * @param bytes The most estimated bytes of decoded images to keep.
+	 */
+	public static void setBudget(long bytes)
+	{
+		synchronized(lock)
+		{
+			budget = bytes;
+			evict();
+		}
+	}
+	
+	/**
+	 * @return The byte budget.
+	 */
+	public static long getBudget()
+	{
+		synchronized(lock)
+		{
+			return budget;
+		}
+	}
+	
+	/**
+	 * @return The estimated bytes of every image in the cache.
+	 */
+	public static long getSize()
+	{
+		synchronized(lock)
+		{
+			return size;
+		}
+	}
+	
+	/**
+	 * Drops the given file from the cache. Images already handed out stay valid.
+	 * @param file The file.
+	 */
+	public static void invalidate(File file)
+	{
+		synchronized(lock)
+		{
+			remove(file.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Drops every image from the cache. Images already handed out stay valid.
+	 */
+	public static void clear()
+	{
+		synchronized(lock)
+		{
+			entries.clear();
+			size = 0;
+		}
+	}
+	
+	/**
+	 * Decodes an image, bypassing the cache. Raw images as RawImage.read() does, anything else through ImageIO into an IntBackedImage.
+	 * @param file The file.
+	 * @return The new image.
+	 * @throws IOException If the file can't be read or decoded.
+	 */
+	public static Image decode(File file) throws IOException
+	{
+		if(RawImage.isRawFile(file))
+		{
+			return RawImage.read(file);
+		}
+		BufferedImage image = ImageIO.read(file);
+		if(image == null)
+		{
+			throw new IOException("No decoder for " + file);
+		}
+		return new IntBackedImage(image);
+	}
+	
+	/**
+	 * Counts a freshly decoded entry toward the budget, unless it was replaced meanwhile.
+	 */
+	private static void admit(String key, Entry entry)
+	{
+		synchronized(lock)
+		{
+			if(entries.get(key) != entry)
+			{
+				return;
+			}
+			if(entry.bytes > budget)
+			{
+				//would evict everything else and still not fit
+				entries.remove(key);
+				return;
+			}
+			entry.counted = true;
+			size += entry.bytes;
+			evict();
+		}
+	}
+	
+	/**
+	 * Removes an entry, uncounting it. Call with the lock held.
+	 */
+	private static void remove(String key)
+	{
+		Entry entry = entries.remove(key);
+		if(entry != null && entry.counted)
+		{
+			size -= entry.bytes;
+		}
+	}
+	
+	/**
+	 * Evicts the least recently used decoded entries until the cache fits its budget. Call with the lock held.
+	 */
+	private static void evict()
+	{
+		Iterator<Entry> iter = entries.values().iterator();
+		while(size > budget && iter.hasNext())
+		{
+			Entry entry = iter.next();
+			//entries still decoding aren't counted yet
+			if(entry.counted)
+			{
+				iter.remove();
+				size -= entry.bytes;
+			}
+		}
+	}
+	
+	/**
+	 * @return The estimated bytes of one of the image types decode() makes.
+	 */
+	private static long sizeOf(Image image)
+	{
+		long pixels = (long)image.getWidth() * image.getHeight();
+		if(image instanceof NoiseImage)
+		{
+			return pixels * 8;
+		}
+		if(image instanceof DoubleImage)
+		{
+			return pixels * (image.hasAlpha() ? 32 : 24);
+		}
+		if(image instanceof FloatImage)
+		{
+			return pixels * (image.hasAlpha() ? 16 : 12);
+		}
+		//IntBackedImage and FloatNoiseImage
+		return pixels * 4;
+	}
+	
+	/**
+	 * A cached decoded image, or one being decoded. Only ever handed out wrapped.
+	 */
+	private static class Entry
+	{
+		private final long modified;
+		private final FutureTask<Image> task;
+		
+		/**
+		 * The estimated size, set by the decode.
+		 */
+		private long bytes;
+		
+		/**
+		 * True once bytes is counted in size.
+		 */
+		private boolean counted;
+		
+		private Entry(final File file, long lastModified)
+		{
+			modified = lastModified;
+			task = new FutureTask<Image>(new Callable<Image>()
+			{
+				@Override
+				public Image call() throws IOException
+				{
+					Image image = decode(file);
+					bytes = sizeOf(image);
+					return image;
+				}
+			});
+		}
+	}
+}
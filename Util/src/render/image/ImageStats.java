@@ -0,0 +1,211 @@
+package render.image;
+
+/**
+ * 
+ * The statistics of one channel, or the grey values, of an Image: min, max, mean, variance and an optional histogram.
+ * Rows are folded in one at a time, and partial results from other threads merged, with the pairwise variance update
+ * so the result doesn't depend on how the rows were split.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class ImageStats
+{
+	/**
+	 * Channel index for the grey values, for Image.stats().
+	 */
+	public static final int GREY = -1;
+	
+	private long count;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double mean;
+	
+	/**
+	 * The sum of squared differences from the mean.
+	 */
+	private double m2;
+	
+	/**
+	 * Counts of values in even bins over 0-1, values outside go in the end bins. Null if not wanted.
+	 */
+	private final long[] histogram;
+	
+	/**
+	 * Creates empty statistics.
+	 * @param bins The number of histogram bins, 0 for no histogram.
+	 */
+	public ImageStats(int bins)
+	{
+		histogram = bins > 0 ? new long[bins] : null;
+	}
+	
+	/**
+	 * @return The number of values.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * @return The smallest value, positive infinity if there are none.
+	 */
+	public double getMin()
+	{
+		return min;
+	}
+	
+	/**
+	 * @return The largest value, negative infinity if there are none.
+	 */
+	public double getMax()
+	{
+		return max;
+	}
+	
+	/**
+	 * @return The mean value.
+	 */
+	public double getMean()
+	{
+		return mean;
+	}
+	
+	/**
+	 * @return The population variance.
+	 */
+	public double getVariance()
+	{
+		return count > 0 ? m2 / count : 0;
+	}
+	
+	/**
+	 * @return The population standard deviation.
+	 */
+	public double getStandardDeviation()
+	{
+		return Math.sqrt(getVariance());
+	}
+	
+	/**
+	 * @return The histogram bins, null if none were asked for. Not a copy.
+	 */
+	public long[] getHistogram()
+	{
+		return histogram;
+	}
+	
+	/**
+	 * Folds in a row of values.
+	 * @param values The values.
+	 * @param length The number of values, from index 0.
+	 */
+	void add(double[] values, int length)
+	{
+		if(length <= 0)
+		{
+			return;
+		}
+		double sum = 0;
+		double rowMin = Double.POSITIVE_INFINITY;
+		double rowMax = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < length; i++)
+		{
+			double value = values[i];
+			sum += value;
+			rowMin = Math.min(rowMin, value);
+			rowMax = Math.max(rowMax, value);
+		}
+		double rowMean = sum / length;
+		double rowM2 = 0;
+		for(int i = 0; i < length; i++)
+		{
+			double delta = values[i] - rowMean;
+			rowM2 += delta * delta;
+		}
+		if(histogram != null)
+		{
+			for(int i = 0; i < length; i++)
+			{
+				histogram[bin(values[i])]++;
+			}
+		}
+		combine(length, rowMin, rowMax, rowMean, rowM2);
+	}
+	
+	/**
+	 * Folds in a row of values.
+	 * @param values The values.
+	 * @param length The number of values, from index 0.
+	 */
+	void add(float[] values, int length)
+	{
+		if(length <= 0)
+		{
+			return;
+		}
+		double sum = 0;
+		double rowMin = Double.POSITIVE_INFINITY;
+		double rowMax = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < length; i++)
+		{
+			double value = values[i];
+			sum += value;
+			rowMin = Math.min(rowMin, value);
+			rowMax = Math.max(rowMax, value);
+		}
+		double rowMean = sum / length;
+		double rowM2 = 0;
+		for(int i = 0; i < length; i++)
+		{
+			double delta = values[i] - rowMean;
+			rowM2 += delta * delta;
+		}
+		if(histogram != null)
+		{
+			for(int i = 0; i < length; i++)
+			{
+				histogram[bin(values[i])]++;
+			}
+		}
+		combine(length, rowMin, rowMax, rowMean, rowM2);
+	}
+	
+	/**
+	 * Merges in statistics gathered elsewhere, with the same number of bins.
+	 * @param other The other statistics.
+	 */
+	synchronized void merge(ImageStats other)
+	{
+		if(histogram != null)
+		{
+			for(int i = 0; i < histogram.length; i++)
+			{
+				histogram[i] += other.histogram[i];
+			}
+		}
+		combine(other.count, other.min, other.max, other.mean, other.m2);
+	}
+	
+	private void combine(long n, double otherMin, double otherMax, double otherMean, double otherM2)
+	{
+		if(n == 0)
+		{
+			return;
+		}
+		long total = count + n;
+		double delta = otherMean - mean;
+		mean += delta * n / total;
+		m2 += otherM2 + (delta * delta * count * n / total);
+		count = total;
+		min = Math.min(min, otherMin);
+		max = Math.max(max, otherMax);
+	}
+	
+	private int bin(double value)
+	{
+		int bin = (int)(value * histogram.length);
+		return bin < 0 ? 0 : (bin >= histogram.length ? histogram.length - 1 : bin);
+	}
+}
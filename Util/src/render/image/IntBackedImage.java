@@ -56,16 +56,26 @@ public final class IntBackedImage extends Image
 		super(1, 1);
 		width = image.getWidth();
 		height = image.getHeight();
-		if(image.getType() != BufferedImage.TYPE_INT_ARGB)
+		if(image.getType() != BufferedImage.TYPE_INT_ARGB && image.getType() != BufferedImage.TYPE_INT_RGB)
 		{
+			//redraw into ints we can reach, keeping alpha if there is any
 			BufferedImage old = image;
-			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			image = new BufferedImage(width, height, old.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
 			Graphics2D g2 = image.createGraphics();
 			g2.drawImage(old, 0, 0, null);
 			g2.dispose();
 		}
 		buffer = image;
 		data = ((DataBufferInt)buffer.getRaster().getDataBuffer()).getData();
+		if(!buffer.getColorModel().hasAlpha())
+		{
+			//the top byte of an RGB pixel is ignored and left 0, make it read back as opaque
+			for(int i = 0; i < data.length; i++)
+			{
+				data[i] |= 0xFF000000;
+			}
+		}
+		clearClip();
 	}
 	
 	@Override
@@ -123,46 +133,167 @@ public final class IntBackedImage extends Image
 		return buffer;
 	}
 	
+	@Override
+	public int getARGB(int x, int y)
+	{
+		return data[x + (y * width)];
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		data[x + (y * width)] = argb;
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		return unpackGrey(data[x + (y * width)]);
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		data[x + (y * width)] = 0xFF000000 | (toByte(grey) * 0x010101);
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		return unpackChannel(data[x + (y * width)], channel);
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		int shift = (3 - channel) << 3;
+		int i = x + (y * width);
+		data[i] = (data[i] & ~(0xFF << shift)) | (toByte(value) << shift);
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int[] argb, int offset)
+	{
+		System.arraycopy(data, x + (y * width), argb, offset, length);
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int[] argb, int offset)
+	{
+		System.arraycopy(argb, offset, data, x + (y * width), length);
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		int shift = (3 - channel) << 3;
+		int start = x + (y * width);
+		for(int i = 0; i < length; i++)
+		{
+			values[offset + i] = ((data[start + i] >>> shift) & 0xFF) / 255F;
+		}
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		int shift = (3 - channel) << 3;
+		int mask = ~(0xFF << shift);
+		int start = x + (y * width);
+		for(int i = 0; i < length; i++)
+		{
+			data[start + i] = (data[start + i] & mask) | (toByte(values[offset + i]) << shift);
+		}
+	}
+	
+	@Override
+	public void getGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		int start = x + (y * width);
+		for(int i = 0; i < length; i++)
+		{
+			values[offset + i] = unpackGrey(data[start + i]);
+		}
+	}
+	
+	@Override
+	public void copySpan(Image image, int srcX, int srcY, int x, int y, int length)
+	{
+		//the source packs straight into our pixels
+		image.getRow(srcX, srcY, length, data, x + (y * width));
+	}
+	
+	/**
+	 * Blends a row of packed ARGB pixels over this image, by their alpha. Skips clip checking.
+	 * @param x The first x location.
+	 * @param y The y location.
+	 * @param length The number of pixels.
+	 * @param argb The pixels.
+	 * @param offset The index of the first pixel in argb.
+	 */
+	public void blendRow(int x, int y, int length, int[] argb, int offset)
+	{
+		IntKernels.blend(argb, offset, data, x + (y * width), length);
+	}
+	
 	//draw methods
 	
-	public void blit(Image image)
+	/**
+	 * Blends the given image over this one by its alpha, with its origin at the given location.
+	 * @param image The image.
+	 * @param x The x loc.
+	 * @param y The y loc.
+	 */
+	public void blend(IntBackedImage image, int x, int y)
 	{
-		if(image instanceof IntBackedImage)
+		view.set(x, y, x + image.width - 1, y + image.height - 1);
+		if(view.visible())
 		{
-			view.clear();
-			if(view.visible())
+			markViewDirty();
+			int length = view.maxX - view.minX + 1;
+			for(int j = view.minY; j <= view.maxY; j++)
 			{
-				for(int y = view.minY; y <= view.maxY; y++)
-				{
-					System.arraycopy(((IntBackedImage)image).data, view.minX + (image.width * y), data, view.minX + (width * y), view.maxX - view.minX + 1);
-				}
+				IntKernels.blend(image.data, (view.minX - x) + ((j - y) * image.width), data, view.minX + (j * width), length);
 			}
-		}else
-		{
-			super.blit(image);
 		}
 	}
 	
-	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	/**
+	 * Multiplies each channel of every pixel in the clip bounds by the matching channel of the given color.
+	 * @param color The color.
+	 */
+	public void multiply(Color color)
 	{
-		int col = intColor(color);
-		for(int i = x1 + (y * width); i <= x2 + (y * width); i++)
+		view.clear();
+		if(view.visible())
 		{
-			data[i] = col;
+			markViewDirty();
+			int col = intColor(color);
+			int length = view.maxX - view.minX + 1;
+			for(int j = view.minY; j <= view.maxY; j++)
+			{
+				IntKernels.multiply(data, view.minX + (j * width), length, col);
+			}
 		}
 	}
 	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		IntKernels.fill(data, x1 + (y * width), x2 - x1 + 1, intColor(color));
+	}
+	
 	protected void baseFillYScan(int x, int y1, int y2, Color color)
 	{
-		int col = intColor(color);
-		for(int i = x + (y1 * width); i <= x + (y2 * width); i++)
-		{
-			data[i] = col;
-		}
+		IntKernels.fill(data, x + (y1 * width), width, y2 - y1 + 1, intColor(color));
 	}
 	
 	private static final int intColor(Color color)
 	{
+		if(color instanceof IntARGB)
+		{
+			//already packed the way we store it
+			return ((IntARGB)color).x;
+		}
 		return ((color.getAlphaB() & 0xFF) << 24) + ((color.getRedB() & 0xFF) << 16) + ((color.getGreenB() & 0xFF) << 8) + (color.getBlueB() & 0xFF);
 	}
 }
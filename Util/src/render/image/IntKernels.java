@@ -0,0 +1,130 @@
+package render.image;
+
+import java.util.Arrays;
+
+/**
+ * 
+ * Loops over packed ARGB pixels, for IntBackedImage and the conversions into it.
+ * Blending and multiplying work on red and blue together in one int, two 8 bit lanes with 8 bits of headroom each,
+ * so a pixel costs two multiplies instead of four. The rest are plain counted loops the JIT unrolls and vectorizes.
+ * 
+ * @author F4113nb34st
+ *
+ */
+final class IntKernels
+{
+	private static final int RB_MASK = 0x00FF00FF;
+	private static final int G_MASK = 0x0000FF00;
+	
+	private IntKernels()
+	{
+	}
+	
+	/**
+	 * Fills a run of pixels.
+	 */
+	static void fill(int[] data, int from, int length, int argb)
+	{
+		Arrays.fill(data, from, from + length, argb);
+	}
+	
+	/**
+	 * Fills every stride'th pixel, count times.
+	 */
+	static void fill(int[] data, int from, int stride, int count, int argb)
+	{
+		for(int i = 0, j = from; i < count; i++, j += stride)
+		{
+			data[j] = argb;
+		}
+	}
+	
+	/**
+	 * Blends a run of source pixels over the destination. Color mixes by the source alpha, exact over an opaque destination,
+	 * and alpha accumulates as a + b(1 - a).
+	 */
+	static void blend(int[] src, int srcOff, int[] dst, int dstOff, int length)
+	{
+		for(int i = 0; i < length; i++)
+		{
+			int s = src[srcOff + i];
+			int sa = s >>> 24;
+			if(sa == 0xFF)
+			{
+				dst[dstOff + i] = s;
+			}else
+			if(sa != 0)
+			{
+				int d = dst[dstOff + i];
+				//0-256, so opaque keeps the source exactly, and an opaque destination stays opaque
+				int a = sa + (sa >>> 7);
+				int inv = 256 - a;
+				int rb = (((s & RB_MASK) * a) + ((d & RB_MASK) * inv)) >>> 8;
+				int g = (((s & G_MASK) * a) + ((d & G_MASK) * inv)) >>> 8;
+				int alpha = Math.min(sa + (((d >>> 24) * (inv + 1)) >>> 8), 0xFF);
+				dst[dstOff + i] = (alpha << 24) | (rb & RB_MASK) | (g & G_MASK);
+			}
+		}
+	}
+	
+	/**
+	 * Multiplies each channel of a run of pixels by the matching channel of the given color, as 0-1 values.
+	 */
+	static void multiply(int[] data, int offset, int length, int argb)
+	{
+		int ma = scale(argb >>> 24);
+		int mr = scale((argb >>> 16) & 0xFF);
+		int mg = scale((argb >>> 8) & 0xFF);
+		int mb = scale(argb & 0xFF);
+		if(mr == mb)
+		{
+			//red and blue share a lane pair, one multiply does both
+			for(int i = offset; i < offset + length; i++)
+			{
+				int p = data[i];
+				int rb = (((p & RB_MASK) * mr) >>> 8) & RB_MASK;
+				int g = (((p & G_MASK) * mg) >>> 8) & G_MASK;
+				data[i] = ((((p >>> 24) * ma) >>> 8) << 24) | rb | g;
+			}
+		}else
+		{
+			for(int i = offset; i < offset + length; i++)
+			{
+				int p = data[i];
+				int r = ((((p >>> 16) & 0xFF) * mr) >>> 8) << 16;
+				int g = (((p & G_MASK) * mg) >>> 8) & G_MASK;
+				int b = ((p & 0xFF) * mb) >>> 8;
+				data[i] = ((((p >>> 24) * ma) >>> 8) << 24) | r | g | b;
+			}
+		}
+	}
+	
+	/**
+	 * Packs runs of 0-1 channel values into ARGB pixels, quantized as Image.toByte() does.
+	 * @param alpha The alpha values, or null for opaque.
+	 */
+	static void pack(double[] alpha, double[] red, double[] green, double[] blue, int from, int[] data, int to, int length)
+	{
+		if(alpha == null)
+		{
+			for(int i = 0; i < length; i++)
+			{
+				data[to + i] = 0xFF000000 | ((((int)(red[from + i] * 255)) & 0xFF) << 16) | ((((int)(green[from + i] * 255)) & 0xFF) << 8) | (((int)(blue[from + i] * 255)) & 0xFF);
+			}
+		}else
+		{
+			for(int i = 0; i < length; i++)
+			{
+				data[to + i] = ((((int)(alpha[from + i] * 255)) & 0xFF) << 24) | ((((int)(red[from + i] * 255)) & 0xFF) << 16) | ((((int)(green[from + i] * 255)) & 0xFF) << 8) | (((int)(blue[from + i] * 255)) & 0xFF);
+			}
+		}
+	}
+	
+	/**
+	 * @return A byte channel as a 0-256 factor, so 255 multiplies exactly by 1.
+	 */
+	private static int scale(int channel)
+	{
+		return channel + (channel >>> 7);
+	}
+}
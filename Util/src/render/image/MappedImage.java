@@ -0,0 +1,408 @@
+package render.image;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import render.color.Color;
+import render.color.DoubleARGB;
+import render.color.DoubleGrey;
+
+/**
+ * 
+ * An Image backed directly by a memory mapped raw image file, see RawImage.
+ * Greyscale images hold one value per pixel, color images four in ALPHA, RED, GREEN, BLUE order, as floats or doubles.
+ * Opening costs nothing up front, pages are read from the file as they are touched. Writes to a writable image go to the file.
+ * The size is fixed by the file, resize() is not supported. The mapping is released by close(), the image must not be used afterwards.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class MappedImage extends Image implements Closeable
+{
+	/**
+	 * The mapped pixel data.
+	 */
+	private OffHeapBuffer data;
+	
+	/**
+	 * The number of values per pixel, 1 or 4.
+	 */
+	private final int channels;
+	
+	/**
+	 * True if values are doubles, false if floats.
+	 */
+	private final boolean doublePrecision;
+	
+	/**
+	 * The file, null if read only.
+	 */
+	private final File file;
+	
+	private boolean usesAlpha;
+	
+	/**
+	 * The value of usesAlpha in the file header.
+	 */
+	private boolean savedAlpha;
+	
+	//temp colors for getting
+	private DoubleGrey tempGrey = new DoubleGrey();
+	private DoubleARGB tempColor = new DoubleARGB();
+	
+	/**
+	 * Wraps a mapped buffer, called by RawImage.
+	 * @param buffer The mapped pixel data.
+	 * @param w The width.
+	 * @param h The height.
+	 * @param channelCount The number of values per pixel, 1 or 4.
+	 * @param doubles True if values are doubles, false if floats.
+	 * @param alpha True if the header says the image uses alpha.
+	 * @param writeTo The file if the mapping is writable, null if read only.
+	 */
+	MappedImage(OffHeapBuffer buffer, int w, int h, int channelCount, boolean doubles, boolean alpha, File writeTo)
+	{
+		super(0, 0);
+		data = buffer;
+		channels = channelCount;
+		doublePrecision = doubles;
+		usesAlpha = alpha;
+		savedAlpha = alpha;
+		file = writeTo;
+		width = w;
+		height = h;
+		clearClip();
+	}
+	
+	@Override
+	public boolean hasAlpha()
+	{
+		return usesAlpha;
+	}
+	
+	@Override
+	public boolean hasColor()
+	{
+		return channels == 4;
+	}
+	
+	@Override
+	public boolean hasGrey()
+	{
+		return true;
+	}
+	
+	/**
+	 * @return True if values are stored as doubles, false if floats.
+	 */
+	public boolean isDoublePrecision()
+	{
+		return doublePrecision;
+	}
+	
+	/**
+	 * @return True if writes go to the file.
+	 */
+	public boolean isWritable()
+	{
+		return file != null;
+	}
+	
+	/**
+	 * Not supported, the size is fixed by the file.
+	 */
+	@Override
+	public void resize(int w, int h)
+	{
+		if(data != null || w != 0 || h != 0)
+		{
+			throw new UnsupportedOperationException("MappedImage size is fixed by its file");
+		}
+	}
+	
+	/**
+	 * Writes any changes out to the file now rather than when the OS gets to it.
+	 * @throws IOException If the header could not be updated.
+	 */
+	public void flush() throws IOException
+	{
+		if(file != null)
+		{
+			data.force();
+			if(usesAlpha != savedAlpha)
+			{
+				RawImage.writeAlphaFlag(file, usesAlpha);
+				savedAlpha = usesAlpha;
+			}
+		}
+	}
+	
+	/**
+	 * Flushes any changes and releases the mapping.
+	 * @throws IOException If the header could not be updated, the mapping is released regardless.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if(data != null)
+		{
+			try
+			{
+				flush();
+			}finally
+			{
+				data.free();
+				data = null;
+			}
+		}
+	}
+	
+	/**
+	 * @return True if this image has been closed.
+	 */
+	public boolean isClosed()
+	{
+		return data == null;
+	}
+	
+	/**
+	 * @return The mapped pixel data.
+	 */
+	OffHeapBuffer getBuffer()
+	{
+		return data;
+	}
+	
+	private double read(long i)
+	{
+		return doublePrecision ? data.getDouble(i) : data.getFloat(i);
+	}
+	
+	private void write(long i, double value)
+	{
+		if(doublePrecision)
+		{
+			data.putDouble(i, value);
+		}else
+		{
+			data.putFloat(i, (float)value);
+		}
+	}
+	
+	@Override
+	public void set(int x, int y, Color color)
+	{
+		long i = x + ((long)y * width);
+		if(channels == 4)
+		{
+			i <<= 2;
+			write(i, color.getAlpha());
+			write(i + 1, color.getRed());
+			write(i + 2, color.getGreen());
+			write(i + 3, color.getBlue());
+			usesAlpha |= color.hasAlpha();
+		}else
+		{
+			write(i, color.getGrey());
+		}
+	}
+	
+	@Override
+	public Color get(int x, int y)
+	{
+		long i = x + ((long)y * width);
+		if(channels == 4)
+		{
+			i <<= 2;
+			tempColor.set(read(i + 1), read(i + 2), read(i + 3), read(i));
+			return tempColor;
+		}
+		tempGrey.set(read(i));
+		return tempGrey;
+	}
+	
+	@Override
+	public Color convertColor(Color color)
+	{
+		if(channels == 4)
+		{
+			return DoubleARGB.pool.get().set(color);
+		}
+		return DoubleGrey.pool.get().set(color);
+	}
+	
+	@Override
+	public int getARGB(int x, int y)
+	{
+		long i = x + ((long)y * width);
+		if(channels == 4)
+		{
+			i <<= 2;
+			return packARGB(read(i), read(i + 1), read(i + 2), read(i + 3));
+		}
+		return 0xFF000000 | (toByte(read(i)) * 0x010101);
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		long i = x + ((long)y * width);
+		if(channels == 4)
+		{
+			i <<= 2;
+			for(int c = ALPHA; c <= BLUE; c++)
+			{
+				write(i + c, unpackChannel(argb, c));
+			}
+			usesAlpha |= (argb >>> 24) != 0xFF;
+		}else
+		{
+			write(i, unpackGrey(argb));
+		}
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		long i = x + ((long)y * width);
+		if(channels == 4)
+		{
+			i <<= 2;
+			return (read(i + 1) + read(i + 2) + read(i + 3)) / 3D;
+		}
+		return read(i);
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		long i = x + ((long)y * width);
+		if(channels == 4)
+		{
+			i <<= 2;
+			write(i, 1);
+			write(i + 1, grey);
+			write(i + 2, grey);
+			write(i + 3, grey);
+		}else
+		{
+			write(i, grey);
+		}
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		long i = x + ((long)y * width);
+		if(channels == 4)
+		{
+			return (float)read((i << 2) + channel);
+		}
+		return channel == ALPHA ? 1 : (float)read(i);
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		long i = x + ((long)y * width);
+		if(channels == 4)
+		{
+			write((i << 2) + channel, value);
+			if(channel == ALPHA)
+			{
+				usesAlpha |= value != 1;
+			}
+		}else
+		if(channel != ALPHA)
+		{
+			write(i, value);
+		}
+	}
+	
+	//draw methods
+	
+	public void blit(Image image)
+	{
+		view.clear();
+		if(view.visible())
+		{
+			markViewDirty();
+			if(channels == 4 && image instanceof DoubleImage)
+			{
+				blitPlanes((DoubleImage)image);
+				return;
+			}
+			for(int y = view.minY; y <= view.maxY; y++)
+			{
+				for(int x = view.minX; x <= view.maxX; x++)
+				{
+					if(channels == 4)
+					{
+						for(int c = ALPHA; c <= BLUE; c++)
+						{
+							setChannel(x, y, c, image.getChannel(x, y, c));
+						}
+					}else
+					{
+						write(x + ((long)y * width), image.getGrey(x, y));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copies the planes of a DoubleImage at full precision, the channel accessors only carry floats.
+	 */
+	private void blitPlanes(DoubleImage image)
+	{
+		double[][] planes = {image.getAlphaPlane(), image.getRedPlane(), image.getGreenPlane(), image.getBluePlane()};
+		for(int y = view.minY; y <= view.maxY; y++)
+		{
+			for(int x = view.minX; x <= view.maxX; x++)
+			{
+				int s = x + (y * image.getWidth());
+				long i = (x + ((long)y * width)) << 2;
+				if(planes[ALPHA] != null)
+				{
+					write(i, planes[ALPHA][s]);
+					usesAlpha |= planes[ALPHA][s] != 1;
+				}else
+				{
+					write(i, 1);
+				}
+				for(int c = RED; c <= BLUE; c++)
+				{
+					write(i + c, planes[c][s]);
+				}
+			}
+		}
+	}
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		long row = (long)y * width;
+		if(channels == 4)
+		{
+			double a = color.getAlpha();
+			double r = color.getRed();
+			double g = color.getGreen();
+			double b = color.getBlue();
+			for(long i = (x1 + row) << 2; i <= (x2 + row) << 2; i += 4)
+			{
+				write(i, a);
+				write(i + 1, r);
+				write(i + 2, g);
+				write(i + 3, b);
+			}
+			usesAlpha |= color.hasAlpha();
+		}else
+		{
+			double grey = color.getGrey();
+			for(long i = x1 + row; i <= x2 + row; i++)
+			{
+				write(i, grey);
+			}
+		}
+	}
+}
@@ -1,11 +1,14 @@
 package render.image;
 
+import java.util.Arrays;
 import render.color.Color;
 import render.color.DoubleAlpha;
+import util.pool.ScratchPool;
 
 /**
  * 
  * A MaskImage is an image that represents an alpha mask.
+ * Values are a flat row-major array, pixel (x, y) is at index x + (y * getStride()).
  * 
  * @author F4113nb34st
  *
@@ -15,7 +18,7 @@ public class MaskImage extends Image
 	/**
 	 * The double storage.
 	 */
-	private double[][] values;
+	private double[] values;
 	
 	//temp color for getting
 	private DoubleAlpha tempColor = new DoubleAlpha();
@@ -58,32 +61,40 @@ public class MaskImage extends Image
 	}
 	
 	/**
-	 * @return The greyscale value array.
+	 * @return The alpha value array, row-major.
 	 */
-	public double[][] getValues()
+	public double[] getValues()
 	{
 		return values;
 	}
+	
+	/**
+	 * @return The distance between vertically adjacent pixels in the value array.
+	 */
+	public int getStride()
+	{
+		return width;
+	}
 
 	@Override
 	public void resize(int w, int h)
 	{
 		width = w;
 		height = h;
-		values = new double[w][h];
+		values = new double[w * h];
 		clearClip();
 	}
 
 	@Override
 	public void set(int x, int y, Color color)
 	{
-		values[x][y] = color.getAlpha();
+		values[x + (y * width)] = color.getAlpha();
 	}
 
 	@Override
 	public DoubleAlpha get(int x, int y)
 	{
-		tempColor.set(values[x][y]);
+		tempColor.set(values[x + (y * width)]);
 		return tempColor;
 	}
 	
@@ -93,23 +104,107 @@ public class MaskImage extends Image
 		return DoubleAlpha.pool.get().set(color);
 	}
 	
-	//draw methods
+	@Override
+	public int getARGB(int x, int y)
+	{
+		return (toByte(values[x + (y * width)]) << 24) | 0xFFFFFF;
+	}
 	
-	public void blit(Image image)
+	@Override
+	public void setARGB(int x, int y, int argb)
 	{
-		if(image instanceof MaskImage)
+		values[x + (y * width)] = (argb >>> 24) / 255D;
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		return 1;
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		//an opaque grey
+		values[x + (y * width)] = 1;
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		return channel == ALPHA ? (float)values[x + (y * width)] : 1;
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		if(channel == ALPHA)
 		{
-			view.clear();
-			if(view.visible())
+			values[x + (y * width)] = value;
+		}
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		if(channel == ALPHA)
+		{
+			int start = x + (y * width);
+			for(int i = 0; i < length; i++)
 			{
-				for(int x = view.minX; x <= view.maxX; x++)
-				{
-					System.arraycopy(((MaskImage)image).values[x], view.minY, values[x], view.minY, view.maxY - view.minY + 1);
-				}
+				values[offset + i] = (float)this.values[start + i];
 			}
 		}else
 		{
-			super.blit(image);
+			Arrays.fill(values, offset, offset + length, 1);
+		}
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		if(channel == ALPHA)
+		{
+			int start = x + (y * width);
+			for(int i = 0; i < length; i++)
+			{
+				this.values[start + i] = values[offset + i];
+			}
 		}
 	}
+	
+	@Override
+	public void getGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		Arrays.fill(values, offset, offset + length, 1);
+	}
+	
+	@Override
+	public void setGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		//opaque greys
+		Arrays.fill(this.values, x + (y * width), x + (y * width) + length, 1);
+	}
+	
+	@Override
+	public void copySpan(Image image, int srcX, int srcY, int x, int y, int length)
+	{
+		if(image instanceof MaskImage)
+		{
+			System.arraycopy(((MaskImage)image).values, srcX + (srcY * image.width), values, x + (y * width), length);
+		}else
+		{
+			float[] row = ScratchPool.get().borrowFloats(length);
+			image.getRow(srcX, srcY, length, ALPHA, row, 0);
+			setRow(x, y, length, ALPHA, row, 0);
+			ScratchPool.get().release(row);
+		}
+	}
+	
+	//draw methods
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		Arrays.fill(values, x1 + (y * width), x2 + (y * width) + 1, color.getAlpha());
+	}
 }
@@ -1,11 +1,13 @@
 package render.image;
 
+import java.util.Arrays;
 import render.color.Color;
 import render.color.DoubleGrey;
 
 /**
  * 
  * A NoiseImage is a greyscale Image with double storage used for Noise-related applications.
+ * Values are a flat row-major array, pixel (x, y) is at index x + (y * getStride()).
  * 
  * @author F4113nb34st
  *
@@ -15,7 +17,7 @@ public class NoiseImage extends Image
 	/**
 	 * The double storage.
 	 */
-	private double[][] values;
+	private double[] values;
 	
 	//temp color for getting
 	private DoubleGrey tempColor = new DoubleGrey();
@@ -58,42 +60,50 @@ public class NoiseImage extends Image
 	}
 
 	/**
-	 * @return The greyscale value array.
+	 * @return The greyscale value array, row-major.
 	 */
-	public double[][] getValues()
+	public double[] getValues()
 	{
 		return values;
 	}
+	
+	/**
+	 * @return The distance between vertically adjacent pixels in the value array.
+	 */
+	public int getStride()
+	{
+		return width;
+	}
 
 	@Override
 	public void resize(int w, int h)
 	{
 		width = w;
 		height = h;
-		values = new double[w][h];
+		values = new double[w * h];
 		clearClip();
 	}
 	
 	public void setValue(int x, int y, double value)
 	{
-		values[x][y] = value;
+		values[x + (y * width)] = value;
 	}
 
 	public double getValue(int x, int y)
 	{
-		return values[x][y];
+		return values[x + (y * width)];
 	}
 
 	@Override
 	public void set(int x, int y, Color color)
 	{
-		values[x][y] = color.getGrey();
+		values[x + (y * width)] = color.getGrey();
 	}
 
 	@Override
 	public DoubleGrey get(int x, int y)
 	{
-		tempColor.set(values[x][y]);
+		tempColor.set(values[x + (y * width)]);
 		return tempColor;
 	}
 	
@@ -103,23 +113,96 @@ public class NoiseImage extends Image
 		return DoubleGrey.pool.get().set(color);
 	}
 	
-	//draw methods
+	@Override
+	public int getARGB(int x, int y)
+	{
+		return 0xFF000000 | (toByte(values[x + (y * width)]) * 0x010101);
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		values[x + (y * width)] = unpackGrey(argb);
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		return values[x + (y * width)];
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		values[x + (y * width)] = grey;
+	}
 	
-	public void blit(Image image)
+	@Override
+	public float getChannel(int x, int y, int channel)
 	{
-		if(image instanceof NoiseImage)
+		return channel == ALPHA ? 1 : (float)values[x + (y * width)];
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		if(channel != ALPHA)
 		{
-			view.clear();
-			if(view.visible())
+			values[x + (y * width)] = value;
+		}
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		if(channel == ALPHA)
+		{
+			Arrays.fill(values, offset, offset + length, 1);
+		}else
+		{
+			int start = x + (y * width);
+			for(int i = 0; i < length; i++)
 			{
-				for(int x = view.minX; x <= view.maxX; x++)
-				{
-					System.arraycopy(((NoiseImage)image).values[x], view.minY, values[x], view.minY, view.maxY - view.minY + 1);
-				}
+				values[offset + i] = (float)this.values[start + i];
 			}
-		}else
+		}
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		if(channel != ALPHA)
 		{
-			super.blit(image);
+			int start = x + (y * width);
+			for(int i = 0; i < length; i++)
+			{
+				this.values[start + i] = values[offset + i];
+			}
 		}
 	}
+	
+	@Override
+	public void getGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		System.arraycopy(this.values, x + (y * width), values, offset, length);
+	}
+	
+	@Override
+	public void setGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		System.arraycopy(values, offset, this.values, x + (y * width), length);
+	}
+	
+	@Override
+	public void copySpan(Image image, int srcX, int srcY, int x, int y, int length)
+	{
+		image.getGreyRow(srcX, srcY, length, values, x + (y * width));
+	}
+	
+	//draw methods
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		Arrays.fill(values, x1 + (y * width), x2 + (y * width) + 1, color.getGrey());
+	}
 }
@@ -0,0 +1,229 @@
+package render.image;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * 
+ * A fixed length array of doubles or floats held in direct ByteBuffers, outside the Java heap, or in a mapped file.
+ * The array is split into chunks so it can be longer than one ByteBuffer allows. free() releases the memory immediately,
+ * where the JVM supports it, instead of waiting for the GC. Direct memory is capped by -XX:MaxDirectMemorySize.
+ * 
+ * @author F4113nb34st
+ *
+ */
+final class OffHeapBuffer
+{
+	/**
+	 * The log2 of the most bytes in one chunk.
+	 */
+	private static final int CHUNK_BYTES_SHIFT = 30;
+	
+	/**
+	 * Unsafe.invokeCleaner(ByteBuffer) on java 9+, DirectBuffer.cleaner() on java 8, or null if neither is allowed.
+	 */
+	private static final Method cleaner;
+	
+	/**
+	 * The Unsafe instance on java 9+, null on java 8.
+	 */
+	private static final Object unsafe;
+	
+	/**
+	 * Cleaner.clean() on java 8.
+	 */
+	private static final Method clean;
+	
+	static
+	{
+		Method method = null;
+		Object target = null;
+		Method cleanMethod = null;
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			target = field.get(null);
+		}catch(Exception ex)
+		{
+			method = null;
+			target = null;
+			try
+			{
+				method = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+				cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			}catch(Exception ex2)
+			{
+				method = null;
+				cleanMethod = null;
+			}
+		}
+		cleaner = method;
+		unsafe = target;
+		clean = cleanMethod;
+	}
+	
+	private final ByteBuffer[] chunks;
+	private final long length;
+	
+	/**
+	 * The log2 of the element size in bytes.
+	 */
+	private final int elementShift;
+	
+	/**
+	 * The log2 of the elements in one chunk.
+	 */
+	private final int chunkShift;
+	private final long chunkMask;
+	
+	/**
+	 * Allocates a new zeroed buffer.
+	 * @param len The number of elements.
+	 * @param elementSize The element size in bytes, 4 for floats and 8 for doubles.
+	 */
+	OffHeapBuffer(long len, int elementSize)
+	{
+		length = len;
+		elementShift = Integer.numberOfTrailingZeros(elementSize);
+		chunkShift = CHUNK_BYTES_SHIFT - elementShift;
+		chunkMask = (1L << chunkShift) - 1;
+		chunks = new ByteBuffer[(int)((len + chunkMask) >>> chunkShift)];
+		try
+		{
+			for(int i = 0; i < chunks.length; i++)
+			{
+				long elements = Math.min(len - ((long)i << chunkShift), 1L << chunkShift);
+				chunks[i] = ByteBuffer.allocateDirect((int)(elements << elementShift)).order(ByteOrder.nativeOrder());
+			}
+		}catch(OutOfMemoryError er)
+		{
+			//don't hold on to the chunks we did get
+			free();
+			throw er;
+		}
+	}
+	
+	/**
+	 * Maps a region of a file, little-endian. Writes to a writable mapping go to the file.
+	 * @param channel The file.
+	 * @param position The byte offset of the first element.
+	 * @param len The number of elements.
+	 * @param elementSize The element size in bytes, 4 for floats and 8 for doubles.
+	 * @param mode The map mode.
+	 * @throws IOException If the mapping fails.
+	 */
+	OffHeapBuffer(FileChannel channel, long position, long len, int elementSize, MapMode mode) throws IOException
+	{
+		length = len;
+		elementShift = Integer.numberOfTrailingZeros(elementSize);
+		chunkShift = CHUNK_BYTES_SHIFT - elementShift;
+		chunkMask = (1L << chunkShift) - 1;
+		chunks = new ByteBuffer[(int)((len + chunkMask) >>> chunkShift)];
+		try
+		{
+			for(int i = 0; i < chunks.length; i++)
+			{
+				long elements = Math.min(len - ((long)i << chunkShift), 1L << chunkShift);
+				chunks[i] = channel.map(mode, position + ((long)i << CHUNK_BYTES_SHIFT), elements << elementShift).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}catch(IOException ex)
+		{
+			free();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Writes any changes to a mapped file out to the disk.
+	 */
+	void force()
+	{
+		for(int i = 0; i < chunks.length; i++)
+		{
+			if(chunks[i] instanceof MappedByteBuffer)
+			{
+				((MappedByteBuffer)chunks[i]).force();
+			}
+		}
+	}
+	
+	/**
+	 * @return The number of elements.
+	 */
+	long length()
+	{
+		return length;
+	}
+	
+	double getDouble(long index)
+	{
+		return chunks[(int)(index >>> chunkShift)].getDouble((int)(index & chunkMask) << 3);
+	}
+	
+	void putDouble(long index, double value)
+	{
+		chunks[(int)(index >>> chunkShift)].putDouble((int)(index & chunkMask) << 3, value);
+	}
+	
+	float getFloat(long index)
+	{
+		return chunks[(int)(index >>> chunkShift)].getFloat((int)(index & chunkMask) << 2);
+	}
+	
+	void putFloat(long index, float value)
+	{
+		chunks[(int)(index >>> chunkShift)].putFloat((int)(index & chunkMask) << 2, value);
+	}
+	
+	/**
+	 * Releases the memory. The buffer must not be used afterwards.
+	 */
+	void free()
+	{
+		for(int i = 0; i < chunks.length; i++)
+		{
+			if(chunks[i] != null)
+			{
+				release(chunks[i]);
+			}
+			chunks[i] = null;
+		}
+	}
+	
+	/**
+	 * Frees a direct ByteBuffer now, if the JVM allows it. Otherwise it is left for the GC.
+	 */
+	private static void release(ByteBuffer buffer)
+	{
+		if(cleaner == null)
+		{
+			return;
+		}
+		try
+		{
+			if(unsafe != null)
+			{
+				cleaner.invoke(unsafe, buffer);
+			}else
+			{
+				Object bufferCleaner = cleaner.invoke(buffer);
+				if(bufferCleaner != null)
+				{
+					clean.invoke(bufferCleaner);
+				}
+			}
+		}catch(Exception ex)
+		{
+			//left for the GC
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package render.image;
+
+import java.io.Closeable;
+import render.color.Color;
+import render.color.DoubleARGB;
+
+/**
+ * 
+ * A color Image with float storage held outside the Java heap, so large intermediate buffers don't weigh on the GC.
+ * Pixels are four interleaved floats in ALPHA, RED, GREEN, BLUE order, row-major.
+ * The memory is released by close(), the image must not be used afterwards.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class OffHeapImage extends Image implements Closeable
+{
+	/**
+	 * The float storage.
+	 */
+	private OffHeapBuffer data;
+	
+	//no initializer, the copy constructor sets it during super()
+	private boolean usesAlpha;
+	
+	//temp color for getting
+	private DoubleARGB tempColor = new DoubleARGB();
+	
+	/**
+	 * Creates a new OffHeapImage of the given size.
+	 * @param w The width.
+	 * @param h The height.
+	 */
+	public OffHeapImage(int w, int h)
+	{
+		super(w, h);
+	}
+	
+	/**
+	 * Creates a deep copy of the given image.
+	 * @param image The image to copy.
+	 */
+	public OffHeapImage(Image image)
+	{
+		super(image);
+	}
+	
+	@Override
+	public boolean hasAlpha()
+	{
+		return usesAlpha;
+	}
+	
+	@Override
+	public boolean hasColor()
+	{
+		return true;
+	}
+	
+	@Override
+	public boolean hasGrey()
+	{
+		return true;
+	}
+	
+	@Override
+	public void resize(int w, int h)
+	{
+		close();
+		width = w;
+		height = h;
+		data = new OffHeapBuffer((long)w * h * 4, 4);
+		//start opaque
+		for(long i = 0; i < data.length(); i += 4)
+		{
+			data.putFloat(i, 1);
+		}
+		usesAlpha = false;
+		clearClip();
+	}
+	
+	/**
+	 * Releases the off heap memory now rather than when this image is collected.
+	 */
+	@Override
+	public void close()
+	{
+		if(data != null)
+		{
+			data.free();
+			data = null;
+		}
+	}
+	
+	/**
+	 * @return True if this image has been closed.
+	 */
+	public boolean isClosed()
+	{
+		return data == null;
+	}
+	
+	@Override
+	public void set(int x, int y, Color color)
+	{
+		long i = (x + ((long)y * width)) << 2;
+		data.putFloat(i, (float)color.getAlpha());
+		data.putFloat(i + 1, (float)color.getRed());
+		data.putFloat(i + 2, (float)color.getGreen());
+		data.putFloat(i + 3, (float)color.getBlue());
+		usesAlpha |= color.hasAlpha();
+	}
+	
+	@Override
+	public DoubleARGB get(int x, int y)
+	{
+		long i = (x + ((long)y * width)) << 2;
+		tempColor.set(data.getFloat(i + 1), data.getFloat(i + 2), data.getFloat(i + 3), data.getFloat(i));
+		return tempColor;
+	}
+	
+	@Override
+	public Color convertColor(Color color)
+	{
+		return DoubleARGB.pool.get().set(color);
+	}
+	
+	@Override
+	public int getARGB(int x, int y)
+	{
+		long i = (x + ((long)y * width)) << 2;
+		return packARGB(data.getFloat(i), data.getFloat(i + 1), data.getFloat(i + 2), data.getFloat(i + 3));
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		long i = (x + ((long)y * width)) << 2;
+		for(int c = ALPHA; c <= BLUE; c++)
+		{
+			data.putFloat(i + c, unpackChannel(argb, c));
+		}
+		usesAlpha |= (argb >>> 24) != 0xFF;
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		long i = (x + ((long)y * width)) << 2;
+		return ((double)data.getFloat(i + 1) + data.getFloat(i + 2) + data.getFloat(i + 3)) / 3D;
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		long i = (x + ((long)y * width)) << 2;
+		data.putFloat(i, 1);
+		data.putFloat(i + 1, (float)grey);
+		data.putFloat(i + 2, (float)grey);
+		data.putFloat(i + 3, (float)grey);
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		return data.getFloat(((x + ((long)y * width)) << 2) + channel);
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		data.putFloat(((x + ((long)y * width)) << 2) + channel, value);
+		if(channel == ALPHA)
+		{
+			usesAlpha |= value != 1;
+		}
+	}
+	
+	//draw methods
+	
+	public void blit(Image image)
+	{
+		view.clear();
+		if(view.visible())
+		{
+			markViewDirty();
+			for(int y = view.minY; y <= view.maxY; y++)
+			{
+				for(int x = view.minX; x <= view.maxX; x++)
+				{
+					for(int c = ALPHA; c <= BLUE; c++)
+					{
+						setChannel(x, y, c, image.getChannel(x, y, c));
+					}
+				}
+			}
+		}
+	}
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		float a = (float)color.getAlpha();
+		float r = (float)color.getRed();
+		float g = (float)color.getGreen();
+		float b = (float)color.getBlue();
+		for(long i = (x1 + ((long)y * width)) << 2; i <= (x2 + ((long)y * width)) << 2; i += 4)
+		{
+			data.putFloat(i, a);
+			data.putFloat(i + 1, r);
+			data.putFloat(i + 2, g);
+			data.putFloat(i + 3, b);
+		}
+		usesAlpha |= color.hasAlpha();
+	}
+}
@@ -0,0 +1,187 @@
+package render.image;
+
+import java.io.Closeable;
+import render.color.Color;
+import render.color.DoubleGrey;
+
+/**
+ * 
+ * A greyscale Image with double storage held outside the Java heap, so large noise maps don't weigh on the GC.
+ * The memory is released by close(), the image must not be used afterwards.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class OffHeapNoiseImage extends Image implements Closeable
+{
+	/**
+	 * The double storage, row-major.
+	 */
+	private OffHeapBuffer values;
+	
+	//temp color for getting
+	private DoubleGrey tempColor = new DoubleGrey();
+	
+	/**
+	 * Creates a new OffHeapNoiseImage of the given size.
+	 * @param w The width.
+	 * @param h The height.
+	 */
+	public OffHeapNoiseImage(int w, int h)
+	{
+		super(w, h);
+	}
+	
+	/**
+	 * Creates a deep copy of the given image.
+	 * @param image The image to copy.
+	 */
+	public OffHeapNoiseImage(Image image)
+	{
+		super(image);
+	}
+	
+	@Override
+	public boolean hasAlpha()
+	{
+		return false;
+	}
+	
+	@Override
+	public boolean hasColor()
+	{
+		return false;
+	}
+	
+	@Override
+	public boolean hasGrey()
+	{
+		return true;
+	}
+	
+	@Override
+	public void resize(int w, int h)
+	{
+		close();
+		width = w;
+		height = h;
+		values = new OffHeapBuffer((long)w * h, 8);
+		clearClip();
+	}
+	
+	/**
+	 * Releases the off heap memory now rather than when this image is collected.
+	 */
+	@Override
+	public void close()
+	{
+		if(values != null)
+		{
+			values.free();
+			values = null;
+		}
+	}
+	
+	/**
+	 * @return True if this image has been closed.
+	 */
+	public boolean isClosed()
+	{
+		return values == null;
+	}
+	
+	public void setValue(int x, int y, double value)
+	{
+		values.putDouble(x + ((long)y * width), value);
+	}
+	
+	public double getValue(int x, int y)
+	{
+		return values.getDouble(x + ((long)y * width));
+	}
+	
+	@Override
+	public void set(int x, int y, Color color)
+	{
+		values.putDouble(x + ((long)y * width), color.getGrey());
+	}
+	
+	@Override
+	public DoubleGrey get(int x, int y)
+	{
+		tempColor.set(values.getDouble(x + ((long)y * width)));
+		return tempColor;
+	}
+	
+	@Override
+	public Color convertColor(Color color)
+	{
+		return DoubleGrey.pool.get().set(color);
+	}
+	
+	@Override
+	public int getARGB(int x, int y)
+	{
+		return 0xFF000000 | (toByte(values.getDouble(x + ((long)y * width))) * 0x010101);
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		values.putDouble(x + ((long)y * width), unpackGrey(argb));
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		return values.getDouble(x + ((long)y * width));
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		values.putDouble(x + ((long)y * width), grey);
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		return channel == ALPHA ? 1 : (float)values.getDouble(x + ((long)y * width));
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		if(channel != ALPHA)
+		{
+			values.putDouble(x + ((long)y * width), value);
+		}
+	}
+	
+	//draw methods
+	
+	public void blit(Image image)
+	{
+		view.clear();
+		if(view.visible())
+		{
+			markViewDirty();
+			for(int y = view.minY; y <= view.maxY; y++)
+			{
+				for(int x = view.minX; x <= view.maxX; x++)
+				{
+					values.putDouble(x + ((long)y * width), image.getGrey(x, y));
+				}
+			}
+		}
+	}
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		double grey = color.getGrey();
+		for(long i = x1 + ((long)y * width); i <= x2 + ((long)y * width); i++)
+		{
+			values.putDouble(i, grey);
+		}
+	}
+}
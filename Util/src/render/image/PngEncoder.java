@@ -0,0 +1,341 @@
+package render.image;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 
+ * Streams Images out as 8 bit pngs, one scanline at a time through the row accessors, without an intermediate BufferedImage.
+ * Pixels are written as RGB, with an alpha channel if the image has one. Grey images too, ImageIO reads greyscale pngs as linear
+ * and would shift their values on the way back in through loadImage().
+ * The deflater and every row and output buffer are kept between images, so an encoder reused for many images stops allocating.
+ * Not thread safe, use one per thread.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class PngEncoder
+{
+	/**
+	 * Compression level for no compression at all, the pixels are stored as is.
+	 */
+	public static final int STORE = Deflater.NO_COMPRESSION;
+	
+	/**
+	 * The best compression level.
+	 */
+	public static final int BEST = Deflater.BEST_COMPRESSION;
+	
+	/**
+	 * The compression level saveImage() uses. Past this, time grows much faster than files shrink.
+	 */
+	public static final int DEFAULT_LEVEL = 4;
+	
+	private static final byte[] SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+	private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+	private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+	
+	//color types
+	private static final int RGB = 2;
+	private static final int RGBA = 6;
+	
+	//row filters
+	private static final int FILTER_NONE = 0;
+	private static final int FILTER_UP = 2;
+	
+	/**
+	 * The size of the IDAT chunks.
+	 */
+	private static final int CHUNK_SIZE = 1 << 16;
+	
+	private static final ThreadLocal<PngEncoder> local = new ThreadLocal<PngEncoder>()
+	{
+		@Override
+		protected PngEncoder initialValue()
+		{
+			return new PngEncoder(DEFAULT_LEVEL);
+		}
+	};
+	
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	private int level;
+	
+	/**
+	 * Compressed output waiting to go out as an IDAT chunk.
+	 */
+	private final byte[] chunk = new byte[CHUNK_SIZE];
+	private int chunkLength;
+	
+	/**
+	 * Small chunks and big-endian ints are built here.
+	 */
+	private final byte[] scratch = new byte[13];
+	
+	//row buffers, grown as needed
+	private byte[] row = new byte[0];
+	private byte[] prev = new byte[0];
+	private byte[] filtered = new byte[0];
+	private int[] argb = new int[0];
+	private double[] grey = new double[0];
+	private float[] alpha = new float[0];
+	
+	/**
+	 * Creates a new encoder.
+	 * @param level The compression level, STORE (0) to BEST (9).
+	 */
+	public PngEncoder(int level)
+	{
+		deflater = new Deflater();
+		setLevel(level);
+	}
+	
+	/**
+	 * @return The calling thread's encoder at DEFAULT_LEVEL, for saveImage().
+	 */
+	static PngEncoder get()
+	{
+		return local.get();
+	}
+	
+	/**
+	 * Sets the compression level, for the next image.
+	 * @param l The level, STORE (0) to BEST (9).
+	 */
+	public void setLevel(int l)
+	{
+		if(l < STORE || l > BEST)
+		{
+			throw new IllegalArgumentException("Compression level " + l + " not in " + STORE + "-" + BEST);
+		}
+		level = l;
+		deflater.setLevel(l);
+	}
+	
+	/**
+	 * @return The compression level.
+	 */
+	public int getLevel()
+	{
+		return level;
+	}
+	
+	/**
+	 * Writes the image to a png file.
+	 * @param file The file.
+	 * @param image The image.
+	 * @throws IOException If writing fails.
+	 */
+	public void write(File file, Image image) throws IOException
+	{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), CHUNK_SIZE + 12);
+		try
+		{
+			encode(image, out);
+		}finally
+		{
+			out.close();
+		}
+	}
+	
+	/**
+	 * Encodes the image as a png onto the stream. Doesn't close the stream.
+	 * @param image The image.
+	 * @param out The stream.
+	 * @throws IOException If writing fails.
+	 */
+	public void encode(Image image, OutputStream out) throws IOException
+	{
+		int w = image.getWidth();
+		int h = image.getHeight();
+		int color = storesAlpha(image) ? RGBA : RGB;
+		int stride = w * (color == RGBA ? 4 : 3);
+		ensureCapacity(w, stride + 1);
+		//the row above the first is all zeros
+		Arrays.fill(prev, 0, stride + 1, (byte)0);
+		//stored rows gain nothing from filtering
+		int filter = level == STORE ? FILTER_NONE : FILTER_UP;
+		
+		out.write(SIGNATURE);
+		putInt(w, 0);
+		putInt(h, 4);
+		scratch[8] = 8;
+		scratch[9] = (byte)color;
+		scratch[10] = 0;
+		scratch[11] = 0;
+		scratch[12] = 0;
+		writeChunk(out, IHDR, scratch, 13);
+		
+		deflater.reset();
+		chunkLength = 0;
+		for(int y = 0; y < h; y++)
+		{
+			readRow(image, y, w, color);
+			row[0] = (byte)filter;
+			if(filter == FILTER_UP)
+			{
+				filtered[0] = (byte)filter;
+				for(int i = 1; i <= stride; i++)
+				{
+					filtered[i] = (byte)(row[i] - prev[i]);
+				}
+				deflate(out, filtered, stride + 1);
+				byte[] temp = prev;
+				prev = row;
+				row = temp;
+			}else
+			{
+				deflate(out, row, stride + 1);
+			}
+		}
+		deflater.finish();
+		while(!deflater.finished())
+		{
+			pump(out);
+		}
+		if(chunkLength > 0)
+		{
+			writeChunk(out, IDAT, chunk, chunkLength);
+		}
+		writeChunk(out, IEND, scratch, 0);
+	}
+	
+	/**
+	 * Frees the deflater. The encoder can't be used after.
+	 */
+	public void end()
+	{
+		deflater.end();
+	}
+	
+	/**
+	 * Fills row from index 1 with the pixels of row y.
+	 */
+	private void readRow(Image image, int y, int w, int color)
+	{
+		int i = 1;
+		if(image.hasColor())
+		{
+			image.getRow(0, y, w, argb, 0);
+			for(int x = 0; x < w; x++)
+			{
+				int p = argb[x];
+				row[i++] = (byte)(p >>> 16);
+				row[i++] = (byte)(p >>> 8);
+				row[i++] = (byte)p;
+				if(color == RGBA)
+				{
+					row[i++] = (byte)(p >>> 24);
+				}
+			}
+		}else
+		{
+			image.getGreyRow(0, y, w, grey, 0);
+			if(color == RGBA)
+			{
+				image.getRow(0, y, w, Image.ALPHA, alpha, 0);
+			}
+			for(int x = 0; x < w; x++)
+			{
+				byte g = (byte)Image.toByte(grey[x]);
+				row[i++] = g;
+				row[i++] = g;
+				row[i++] = g;
+				if(color == RGBA)
+				{
+					row[i++] = (byte)Image.toByte(alpha[x]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Feeds bytes to the deflater, writing out chunks as they fill.
+	 */
+	private void deflate(OutputStream out, byte[] data, int length) throws IOException
+	{
+		deflater.setInput(data, 0, length);
+		while(!deflater.needsInput())
+		{
+			pump(out);
+		}
+	}
+	
+	/**
+	 * Moves compressed bytes into the chunk buffer, writing it out once full.
+	 */
+	private void pump(OutputStream out) throws IOException
+	{
+		chunkLength += deflater.deflate(chunk, chunkLength, chunk.length - chunkLength);
+		if(chunkLength == chunk.length)
+		{
+			writeChunk(out, IDAT, chunk, chunkLength);
+			chunkLength = 0;
+		}
+	}
+	
+	/**
+	 * Writes a chunk: length, type, data and the CRC of type and data.
+	 */
+	private void writeChunk(OutputStream out, byte[] type, byte[] data, int length) throws IOException
+	{
+		writeInt(out, length);
+		out.write(type);
+		out.write(data, 0, length);
+		crc.reset();
+		crc.update(type);
+		crc.update(data, 0, length);
+		writeInt(out, (int)crc.getValue());
+	}
+	
+	private void writeInt(OutputStream out, int value) throws IOException
+	{
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+	
+	private void putInt(int value, int offset)
+	{
+		scratch[offset] = (byte)(value >>> 24);
+		scratch[offset + 1] = (byte)(value >>> 16);
+		scratch[offset + 2] = (byte)(value >>> 8);
+		scratch[offset + 3] = (byte)value;
+	}
+	
+	private void ensureCapacity(int w, int rowBytes)
+	{
+		if(row.length < rowBytes)
+		{
+			row = new byte[rowBytes];
+			prev = new byte[rowBytes];
+			filtered = new byte[rowBytes];
+		}
+		if(argb.length < w)
+		{
+			argb = new int[w];
+			grey = new double[w];
+			alpha = new float[w];
+		}
+	}
+	
+	/**
+	 * @return True if the image keeps meaningful alpha. IntBackedImages only do if their BufferedImage does.
+	 */
+	private static boolean storesAlpha(Image image)
+	{
+		if(image instanceof IntBackedImage)
+		{
+			return ((IntBackedImage)image).getBufferImage().getColorModel().hasAlpha();
+		}
+		return image.hasAlpha();
+	}
+}
@@ -0,0 +1,293 @@
+package render.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * 
+ * Reads and writes the raw image format, an uncompressed dump of float or double pixel values behind a small header.
+ * Raw files keep the full precision of NoiseImage and DoubleImage results and open without decoding,
+ * map() uses the file directly as the backing store of a MappedImage.
+ * The header is 32 little-endian bytes: magic "RIMG", version, width, height, channels (1 or 4), bytes per value (4 or 8),
+ * flags (1 if the image uses alpha) and a reserved int. Values follow row-major, color pixels in ALPHA, RED, GREEN, BLUE order.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class RawImage
+{
+	/**
+	 * The file extension for raw images.
+	 */
+	public static final String EXTENSION = ".raw";
+	
+	/**
+	 * "RIMG" in file byte order.
+	 */
+	private static final int MAGIC = 0x474D4952;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int FLAGS_OFFSET = 24;
+	private static final int FLAG_ALPHA = 1;
+	
+	private RawImage()
+	{
+	}
+	
+	/**
+	 * @param file The file.
+	 * @return True if the file name has the raw image extension.
+	 */
+	public static boolean isRawFile(File file)
+	{
+		return file.getName().toLowerCase().endsWith(EXTENSION);
+	}
+	
+	/**
+	 * Writes the image to the file, doubles for DoubleImage, NoiseImage and OffHeapNoiseImage, floats otherwise.
+	 * @param file The file to write.
+	 * @param image The image.
+	 * @throws IOException If writing fails.
+	 */
+	public static void write(File file, Image image) throws IOException
+	{
+		write(file, image, image instanceof DoubleImage || image instanceof NoiseImage || image instanceof OffHeapNoiseImage);
+	}
+	
+	/**
+	 * Writes the image to the file.
+	 * @param file The file to write.
+	 * @param image The image.
+	 * @param doublePrecision True to store doubles, false for floats.
+	 * @throws IOException If writing fails.
+	 */
+	public static void write(File file, Image image, boolean doublePrecision) throws IOException
+	{
+		MappedImage raw = create(file, image.getWidth(), image.getHeight(), image.hasColor(), doublePrecision, false);
+		try
+		{
+			raw.blit(image);
+		}finally
+		{
+			raw.close();
+		}
+	}
+	
+	/**
+	 * Reads a raw image onto the heap, as a NoiseImage, FloatNoiseImage, DoubleImage or FloatImage to match the file.
+	 * @param file The file to read.
+	 * @return The image.
+	 * @throws IOException If the file can't be read or isn't a raw image.
+	 */
+	public static Image read(File file) throws IOException
+	{
+		MappedImage raw = map(file, false);
+		try
+		{
+			int w = raw.getWidth();
+			int h = raw.getHeight();
+			OffHeapBuffer data = raw.getBuffer();
+			if(raw.hasColor())
+			{
+				if(raw.isDoublePrecision())
+				{
+					DoubleImage image = new DoubleImage(w, h);
+					double[] red = image.getRedPlane();
+					double[] green = image.getGreenPlane();
+					double[] blue = image.getBluePlane();
+					for(int i = 0; i < red.length; i++)
+					{
+						red[i] = data.getDouble(((long)i << 2) + 1);
+						green[i] = data.getDouble(((long)i << 2) + 2);
+						blue[i] = data.getDouble(((long)i << 2) + 3);
+					}
+					readAlpha(raw, image);
+					return image;
+				}
+				FloatImage image = new FloatImage(w, h);
+				float[] red = image.getRedPlane();
+				float[] green = image.getGreenPlane();
+				float[] blue = image.getBluePlane();
+				for(int i = 0; i < red.length; i++)
+				{
+					red[i] = data.getFloat(((long)i << 2) + 1);
+					green[i] = data.getFloat(((long)i << 2) + 2);
+					blue[i] = data.getFloat(((long)i << 2) + 3);
+				}
+				readAlpha(raw, image);
+				return image;
+			}
+			if(raw.isDoublePrecision())
+			{
+				NoiseImage image = new NoiseImage(w, h);
+				double[] values = image.getValues();
+				for(int i = 0; i < values.length; i++)
+				{
+					values[i] = data.getDouble(i);
+				}
+				return image;
+			}
+			FloatNoiseImage image = new FloatNoiseImage(w, h);
+			float[] values = image.getValues();
+			for(int i = 0; i < values.length; i++)
+			{
+				values[i] = data.getFloat(i);
+			}
+			return image;
+		}finally
+		{
+			raw.close();
+		}
+	}
+	
+	/**
+	 * Copies the alpha channel, if the raw image uses it.
+	 */
+	private static void readAlpha(MappedImage raw, Image image)
+	{
+		if(raw.hasAlpha())
+		{
+			if(image instanceof DoubleImage && raw.isDoublePrecision())
+			{
+				//straight from the file, the channel accessors only carry floats
+				image.prepareConcurrentWrites(true);
+				double[] alpha = ((DoubleImage)image).getAlphaPlane();
+				OffHeapBuffer data = raw.getBuffer();
+				for(int i = 0; i < alpha.length; i++)
+				{
+					alpha[i] = data.getDouble((long)i << 2);
+				}
+				return;
+			}
+			for(int y = 0; y < raw.getHeight(); y++)
+			{
+				for(int x = 0; x < raw.getWidth(); x++)
+				{
+					image.setChannel(x, y, Image.ALPHA, raw.getChannel(x, y, Image.ALPHA));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Maps a raw image file. Only the header is read, pixels are paged in from the file as they are used.
+	 * @param file The file to map.
+	 * @param writable True to write changes back to the file.
+	 * @return The mapped image, close it to release the mapping.
+	 * @throws IOException If the file can't be mapped or isn't a raw image.
+	 */
+	public static MappedImage map(File file, boolean writable) throws IOException
+	{
+		RandomAccessFile access = new RandomAccessFile(file, writable ? "rw" : "r");
+		try
+		{
+			FileChannel channel = access.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			int read = 0;
+			while(header.hasRemaining() && read >= 0)
+			{
+				read = channel.read(header, header.position());
+			}
+			if(header.hasRemaining() || header.getInt(0) != MAGIC)
+			{
+				throw new IOException("Not a raw image: " + file);
+			}
+			if(header.getInt(4) != VERSION)
+			{
+				throw new IOException("Unsupported raw image version " + header.getInt(4) + ": " + file);
+			}
+			int w = header.getInt(8);
+			int h = header.getInt(12);
+			int channels = header.getInt(16);
+			int precision = header.getInt(20);
+			long length = (long)w * h * channels;
+			if(w < 0 || h < 0 || (channels != 1 && channels != 4) || (precision != 4 && precision != 8) || channel.size() < HEADER_BYTES + (length * precision))
+			{
+				throw new IOException("Corrupt raw image: " + file);
+			}
+			OffHeapBuffer data = new OffHeapBuffer(channel, HEADER_BYTES, length, precision, writable ? MapMode.READ_WRITE : MapMode.READ_ONLY);
+			return new MappedImage(data, w, h, channels, precision == 8, (header.getInt(FLAGS_OFFSET) & FLAG_ALPHA) != 0, writable ? file : null);
+		}finally
+		{
+			//the mapping outlives the channel
+			access.close();
+		}
+	}
+	
+	/**
+	 * Creates a new raw image file and maps it for writing. Color images start opaque black, greyscale images at 0.
+	 * @param file The file to create, replaced if it exists.
+	 * @param w The width.
+	 * @param h The height.
+	 * @param color True for four channels, false for greyscale.
+	 * @param doublePrecision True to store doubles, false for floats.
+	 * @return The mapped image, close it to release the mapping.
+	 * @throws IOException If the file can't be created.
+	 */
+	public static MappedImage create(File file, int w, int h, boolean color, boolean doublePrecision) throws IOException
+	{
+		return create(file, w, h, color, doublePrecision, true);
+	}
+	
+	private static MappedImage create(File file, int w, int h, boolean color, boolean doublePrecision, boolean opaque) throws IOException
+	{
+		int channels = color ? 4 : 1;
+		int precision = doublePrecision ? 8 : 4;
+		long length = (long)w * h * channels;
+		RandomAccessFile access = new RandomAccessFile(file, "rw");
+		try
+		{
+			FileChannel channel = access.getChannel();
+			access.setLength(0);
+			access.setLength(HEADER_BYTES + (length * precision));
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(w).putInt(h).putInt(channels).putInt(precision).putInt(0).putInt(0);
+			header.flip();
+			while(header.hasRemaining())
+			{
+				channel.write(header, header.position());
+			}
+			OffHeapBuffer data = new OffHeapBuffer(channel, HEADER_BYTES, length, precision, MapMode.READ_WRITE);
+			MappedImage image = new MappedImage(data, w, h, channels, doublePrecision, false, file);
+			if(color && opaque)
+			{
+				for(long i = 0; i < length; i += 4)
+				{
+					if(doublePrecision)
+					{
+						data.putDouble(i, 1);
+					}else
+					{
+						data.putFloat(i, 1);
+					}
+				}
+			}
+			return image;
+		}finally
+		{
+			access.close();
+		}
+	}
+	
+	/**
+	 * Updates the alpha flag in a raw image header.
+	 */
+	static void writeAlphaFlag(File file, boolean alpha) throws IOException
+	{
+		RandomAccessFile access = new RandomAccessFile(file, "rw");
+		try
+		{
+			ByteBuffer flags = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			flags.putInt(0, alpha ? FLAG_ALPHA : 0);
+			access.getChannel().write(flags, FLAGS_OFFSET);
+		}finally
+		{
+			access.close();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package render.image;
+
+import render.color.Color;
+
+/**
+ * 
+ * A read only view of another Image, as handed out by ImageCache so one decoded image can be shared.
+ * The clip is the view's own, so each holder of a view can clip and scan it without affecting the others.
+ * Reads go straight through, every write, including drawing onto it, throws UnsupportedOperationException.
+ * Copy it into a new image to draw on it. get() is safe from several threads at once, each gets its own temp color,
+ * but it serializes on the wrapped image, so threads sharing one should read through getARGB() and the row methods.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class ReadOnlyImage extends Image
+{
+	/**
+	 * The wrapped image.
+	 */
+	private final Image image;
+	
+	/**
+	 * Each thread's temp color, a copy of the wrapped image's, made on its first get().
+	 */
+	private final ThreadLocal<Color> tempColors = new ThreadLocal<Color>();
+	
+	/**
+	 * Wraps the given image. Writes to it still show through.
+	 * @param img The image.
+	 */
+	public ReadOnlyImage(Image img)
+	{
+		super(0, 0);
+		image = img;
+		width = img.getWidth();
+		height = img.getHeight();
+		clearClip();
+	}
+	
+	@Override
+	public boolean hasAlpha()
+	{
+		return image.hasAlpha();
+	}
+	
+	@Override
+	public boolean hasColor()
+	{
+		return image.hasColor();
+	}
+	
+	@Override
+	public boolean hasGrey()
+	{
+		return image.hasGrey();
+	}
+	
+	/**
+	 * Not supported, the image is read only.
+	 */
+	@Override
+	public void resize(int w, int h)
+	{
+		if(image != null || w != 0 || h != 0)
+		{
+			throw readOnly();
+		}
+	}
+	
+	@Override
+	public void set(int x, int y, Color color)
+	{
+		throw readOnly();
+	}
+	
+	@Override
+	public Color get(int x, int y)
+	{
+		Color color = tempColors.get();
+		//the wrapped image's temp color is shared, hold it only long enough to copy out of it
+		synchronized(image)
+		{
+			if(color == null)
+			{
+				color = (Color)image.get(x, y).copy();
+				tempColors.set(color);
+			}else
+			{
+				color.set(image.get(x, y));
+			}
+		}
+		return color;
+	}
+	
+	/**
+	 * @return The wrapped image, for reads that go straight to its storage.
+	 */
+	Image getImage()
+	{
+		return image;
+	}
+	
+	@Override
+	public Color convertColor(Color color)
+	{
+		return image.convertColor(color);
+	}
+	
+	@Override
+	public int getARGB(int x, int y)
+	{
+		return image.getARGB(x, y);
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		throw readOnly();
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		return image.getGrey(x, y);
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		throw readOnly();
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		return image.getChannel(x, y, channel);
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		throw readOnly();
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int[] argb, int offset)
+	{
+		image.getRow(x, y, length, argb, offset);
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int[] argb, int offset)
+	{
+		throw readOnly();
+	}
+	
+	@Override
+	public void getRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		image.getRow(x, y, length, channel, values, offset);
+	}
+	
+	@Override
+	public void setRow(int x, int y, int length, int channel, float[] values, int offset)
+	{
+		throw readOnly();
+	}
+	
+	@Override
+	public void getGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		image.getGreyRow(x, y, length, values, offset);
+	}
+	
+	@Override
+	public void setGreyRow(int x, int y, int length, double[] values, int offset)
+	{
+		throw readOnly();
+	}
+	
+	@Override
+	public void copySpan(Image img, int srcX, int srcY, int x, int y, int length)
+	{
+		throw readOnly();
+	}
+	
+	//draw methods
+	
+	@Override
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		throw readOnly();
+	}
+	
+	@Override
+	protected void baseFillYScan(int x, int y1, int y2, Color color)
+	{
+		throw readOnly();
+	}
+	
+	private static UnsupportedOperationException readOnly()
+	{
+		return new UnsupportedOperationException("Image is read only");
+	}
+}
@@ -0,0 +1,163 @@
+package render.image;
+
+/**
+ * 
+ * A row-major cursor over a rectangle of an Image, one horizontal span at a time.
+ * Each read fills a buffer owned by the Scanline with the current row, each write stores that buffer back to the image.
+ * Buffers are reused from row to row, so a whole pass allocates once.
+ * <pre>
+ * Scanline line = image.scan();
+ * while(line.next())
+ * {
+ * 	double[] row = line.readGrey();
+ * 	...
+ * 	line.writeGrey();
+ * }
+ * </pre>
+ * 
+ * @author F4113nb34st
+ *
+ */
+public final class Scanline
+{
+	private final Image image;
+	private final int minX;
+	private final int minY;
+	private final int maxY;
+	private final int length;
+	
+	/**
+	 * The current row.
+	 */
+	private int y;
+	
+	//buffers, created on first use
+	private int[] argb;
+	private double[] grey;
+	private float[] channel;
+	
+	/**
+	 * Creates a new Scanline over the given bounds, inclusive. Positioned before the first row.
+	 */
+	Scanline(Image img, int x1, int y1, int x2, int y2)
+	{
+		image = img;
+		minX = x1;
+		minY = y1;
+		maxY = y2;
+		length = Math.max(x2 - x1 + 1, 0);
+		y = y1 - 1;
+	}
+	
+	/**
+	 * Moves to the next row.
+	 * @return False if there are no rows left.
+	 */
+	public boolean next()
+	{
+		if(length == 0 || y >= maxY)
+		{
+			return false;
+		}
+		y++;
+		return true;
+	}
+	
+	/**
+	 * Moves back before the first row.
+	 */
+	public void reset()
+	{
+		y = minY - 1;
+	}
+	
+	/**
+	 * @return The y location of the current row.
+	 */
+	public int getY()
+	{
+		return y;
+	}
+	
+	/**
+	 * @return The x location of the first pixel in each row, index 0 of the buffers.
+	 */
+	public int getMinX()
+	{
+		return minX;
+	}
+	
+	/**
+	 * @return The number of pixels in each row.
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+	
+	/**
+	 * @return The current row as packed ARGB ints.
+	 */
+	public int[] readARGB()
+	{
+		if(argb == null)
+		{
+			argb = new int[length];
+		}
+		image.getRow(minX, y, length, argb, 0);
+		return argb;
+	}
+	
+	/**
+	 * Writes the ARGB buffer to the current row.
+	 */
+	public void writeARGB()
+	{
+		image.setRow(minX, y, length, argb, 0);
+	}
+	
+	/**
+	 * @return The grey values of the current row.
+	 */
+	public double[] readGrey()
+	{
+		if(grey == null)
+		{
+			grey = new double[length];
+		}
+		image.getGreyRow(minX, y, length, grey, 0);
+		return grey;
+	}
+	
+	/**
+	 * Writes the grey buffer to the current row.
+	 */
+	public void writeGrey()
+	{
+		image.setGreyRow(minX, y, length, grey, 0);
+	}
+	
+	/**
+	 * Reads one channel of the current row. All channels share one buffer.
+	 * @param c The channel, ALPHA, RED, GREEN or BLUE.
+	 * @return The channel values.
+	 */
+	public float[] readChannel(int c)
+	{
+		if(channel == null)
+		{
+			channel = new float[length];
+		}
+		image.getRow(minX, y, length, c, channel, 0);
+		return channel;
+	}
+	
+	/**
+	 * Writes the channel buffer to one channel of the current row.
+	 * @param c The channel, ALPHA, RED, GREEN or BLUE.
+	 */
+	public void writeChannel(int c)
+	{
+		image.setRow(minX, y, length, c, channel, 0);
+	}
+}
@@ -0,0 +1,618 @@
+package render.image;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import render.color.Color;
+import render.color.DoubleARGB;
+import render.color.DoubleGrey;
+
+/**
+ * 
+ * A greyscale or color Image with float storage split into square tiles, so very large canvases only cost memory where they are drawn on.
+ * Tiles are allocated on the first write that differs from the default value, untouched tiles read as the default.
+ * With a resident limit, the least recently used tiles are written to a spill file and read back when touched again.
+ * Writes from several threads to different pixels are safe unless a resident limit is set.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class TiledImage extends Image implements Closeable
+{
+	/**
+	 * The default tile size.
+	 */
+	public static final int TILE_SIZE = 256;
+	
+	/**
+	 * The floats per pixel, 1 for grey and 4 for ARGB.
+	 */
+	private int channels;
+	
+	/**
+	 * The log2 of the tile size.
+	 */
+	private int tileShift;
+	private int tileMask;
+	private int tilesX;
+	
+	/**
+	 * The resident tiles, null if untouched or spilled. Pixels are row-major within a tile, color pixels are interleaved ARGB.
+	 * Atomic so a tile filled under the lock is fully visible to writers on other threads.
+	 */
+	private AtomicReferenceArray<float[]> tiles;
+	
+	/**
+	 * True for tiles whose contents are in the spill file.
+	 */
+	private boolean[] spilled;
+	
+	/**
+	 * True for tiles used since the eviction hand last passed.
+	 */
+	private boolean[] referenced;
+	
+	/**
+	 * The value of untouched pixels, one float per channel.
+	 */
+	private float[] defaults;
+	
+	private boolean usesAlpha;
+	private int resident;
+	
+	/**
+	 * The most tiles kept in memory, 0 for no limit.
+	 */
+	private int residentLimit;
+	private int hand;
+	private RandomAccessFile spillFile;
+	private File spillPath;
+	private ByteBuffer spillBuffer;
+	
+	//temp colors for getting
+	private DoubleARGB tempColor;
+	private DoubleGrey tempGrey;
+	
+	/**
+	 * Creates a new TiledImage of the given size with the default tile size.
+	 * @param w The width.
+	 * @param h The height.
+	 * @param color True for ARGB, false for grey.
+	 */
+	public TiledImage(int w, int h, boolean color)
+	{
+		this(w, h, color, TILE_SIZE);
+	}
+	
+	/**
+	 * Creates a new TiledImage of the given size.
+	 * @param w The width.
+	 * @param h The height.
+	 * @param color True for ARGB, false for grey.
+	 * @param tileSize The tile size, rounded up to a power of two.
+	 */
+	public TiledImage(int w, int h, boolean color, int tileSize)
+	{
+		//fields aren't set during super(), so size it after
+		super(0, 0);
+		channels = color ? 4 : 1;
+		tileShift = 32 - Integer.numberOfLeadingZeros(Math.max(tileSize, 2) - 1);
+		tileMask = (1 << tileShift) - 1;
+		defaults = new float[channels];
+		if(color)
+		{
+			defaults[ALPHA] = 1;
+		}
+		tempColor = new DoubleARGB();
+		tempGrey = new DoubleGrey();
+		resize(w, h);
+	}
+	
+	/**
+	 * Creates a deep copy of the given image.
+	 * @param image The image to copy.
+	 */
+	public TiledImage(Image image)
+	{
+		this(image.getWidth(), image.getHeight(), image.hasColor());
+		blit(image);
+	}
+	
+	@Override
+	public boolean hasAlpha()
+	{
+		return usesAlpha;
+	}
+	
+	@Override
+	public boolean hasColor()
+	{
+		return channels == 4;
+	}
+	
+	@Override
+	public boolean hasGrey()
+	{
+		return true;
+	}
+	
+	@Override
+	public void resize(int w, int h)
+	{
+		width = w;
+		height = h;
+		if(channels != 0)
+		{
+			close();
+			tilesX = (w + tileMask) >> tileShift;
+			int count = tilesX * ((h + tileMask) >> tileShift);
+			tiles = new AtomicReferenceArray<float[]>(count);
+			spilled = new boolean[count];
+			referenced = new boolean[count];
+			resident = 0;
+			hand = 0;
+			usesAlpha = defaults[0] != 1 && channels == 4;
+		}
+		clearClip();
+	}
+	
+	/**
+	 * Sets the value of untouched pixels. Tiles already written keep their contents.
+	 * @param color The default color.
+	 */
+	public void setDefault(Color color)
+	{
+		if(channels == 4)
+		{
+			defaults[ALPHA] = (float)color.getAlpha();
+			defaults[RED] = (float)color.getRed();
+			defaults[GREEN] = (float)color.getGreen();
+			defaults[BLUE] = (float)color.getBlue();
+			usesAlpha |= color.hasAlpha();
+		}else
+		{
+			defaults[0] = (float)color.getGrey();
+		}
+	}
+	
+	/**
+	 * Limits the number of tiles kept in memory, the rest are spilled to a temporary file.
+	 * Eviction is not thread safe, with a limit the image must only be used by one thread at a time.
+	 * @param maxTiles The most resident tiles, 0 for no limit.
+	 */
+	public void setResidentLimit(int maxTiles)
+	{
+		residentLimit = Math.max(maxTiles, 0);
+		while(residentLimit > 0 && resident > residentLimit && evict());
+	}
+	
+	/**
+	 * @return The tile size.
+	 */
+	public int getTileSize()
+	{
+		return 1 << tileShift;
+	}
+	
+	/**
+	 * @return The number of tiles in memory.
+	 */
+	public int getResidentTiles()
+	{
+		return resident;
+	}
+	
+	/**
+	 * @return The number of tiles in the spill file.
+	 */
+	public int getSpilledTiles()
+	{
+		int count = 0;
+		for(int t = 0; t < spilled.length; t++)
+		{
+			if(spilled[t] && tiles.get(t) == null)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Deletes the spill file, if any. Spilled tiles are lost.
+	 */
+	@Override
+	public void close()
+	{
+		if(spillFile != null)
+		{
+			try
+			{
+				spillFile.close();
+			}catch(IOException ex)
+			{
+				ex.printStackTrace();
+			}
+			spillPath.delete();
+			spillFile = null;
+			Arrays.fill(spilled, false);
+		}
+	}
+	
+	@Override
+	public void set(int x, int y, Color color)
+	{
+		if(channels == 4)
+		{
+			write(x, y, (float)color.getAlpha(), (float)color.getRed(), (float)color.getGreen(), (float)color.getBlue());
+			usesAlpha |= color.hasAlpha();
+		}else
+		{
+			write(x, y, (float)color.getGrey());
+		}
+	}
+	
+	@Override
+	public Color get(int x, int y)
+	{
+		if(channels == 4)
+		{
+			tempColor.set(getChannel(x, y, RED), getChannel(x, y, GREEN), getChannel(x, y, BLUE), getChannel(x, y, ALPHA));
+			return tempColor;
+		}
+		tempGrey.set(getChannel(x, y, RED));
+		return tempGrey;
+	}
+	
+	@Override
+	public Color convertColor(Color color)
+	{
+		if(channels == 4)
+		{
+			return DoubleARGB.pool.get().set(color);
+		}
+		return DoubleGrey.pool.get().set(color);
+	}
+	
+	@Override
+	public int getARGB(int x, int y)
+	{
+		if(channels == 4)
+		{
+			return packARGB(getChannel(x, y, ALPHA), getChannel(x, y, RED), getChannel(x, y, GREEN), getChannel(x, y, BLUE));
+		}
+		return 0xFF000000 | (toByte(getChannel(x, y, RED)) * 0x010101);
+	}
+	
+	@Override
+	public void setARGB(int x, int y, int argb)
+	{
+		if(channels == 4)
+		{
+			write(x, y, unpackChannel(argb, ALPHA), unpackChannel(argb, RED), unpackChannel(argb, GREEN), unpackChannel(argb, BLUE));
+			usesAlpha |= (argb >>> 24) != 0xFF;
+		}else
+		{
+			write(x, y, (float)unpackGrey(argb));
+		}
+	}
+	
+	@Override
+	public double getGrey(int x, int y)
+	{
+		if(channels == 4)
+		{
+			return ((double)getChannel(x, y, RED) + getChannel(x, y, GREEN) + getChannel(x, y, BLUE)) / 3D;
+		}
+		return getChannel(x, y, RED);
+	}
+	
+	@Override
+	public void setGrey(int x, int y, double grey)
+	{
+		if(channels == 4)
+		{
+			write(x, y, 1, (float)grey, (float)grey, (float)grey);
+		}else
+		{
+			write(x, y, (float)grey);
+		}
+	}
+	
+	@Override
+	public float getChannel(int x, int y, int channel)
+	{
+		if(channels == 1)
+		{
+			if(channel == ALPHA)
+			{
+				return 1;
+			}
+			channel = 0;
+		}
+		float[] tile = readTile(x, y);
+		return tile == null ? defaults[channel] : tile[offset(x, y) + channel];
+	}
+	
+	@Override
+	public void setChannel(int x, int y, int channel, float value)
+	{
+		if(channels == 1)
+		{
+			if(channel == ALPHA)
+			{
+				return;
+			}
+			channel = 0;
+		}else
+		if(channel == ALPHA)
+		{
+			usesAlpha |= value != 1;
+		}
+		int t = tileIndex(x, y);
+		if(tiles.get(t) == null && !spilled[t] && value == defaults[channel])
+		{
+			return;
+		}
+		writeTile(t)[offset(x, y) + channel] = value;
+	}
+	
+	//draw methods
+	
+	public void blit(Image image)
+	{
+		view.clear();
+		if(view.visible())
+		{
+			markViewDirty();
+			for(int y = view.minY; y <= view.maxY; y++)
+			{
+				for(int x = view.minX; x <= view.maxX; x++)
+				{
+					if(channels == 4)
+					{
+						write(x, y, image.getChannel(x, y, ALPHA), image.getChannel(x, y, RED), image.getChannel(x, y, GREEN), image.getChannel(x, y, BLUE));
+					}else
+					{
+						write(x, y, (float)image.getGrey(x, y));
+					}
+				}
+			}
+			usesAlpha |= channels == 4 && image.hasAlpha();
+		}
+	}
+	
+	protected void baseFillXScan(int x1, int x2, int y, Color color)
+	{
+		//local, parallel fills run this on several threads at once
+		float[] value = new float[channels];
+		if(channels == 4)
+		{
+			value[ALPHA] = (float)color.getAlpha();
+			value[RED] = (float)color.getRed();
+			value[GREEN] = (float)color.getGreen();
+			value[BLUE] = (float)color.getBlue();
+			usesAlpha |= color.hasAlpha();
+		}else
+		{
+			value[0] = (float)color.getGrey();
+		}
+		boolean isDefault = Arrays.equals(value, defaults);
+		//one span per tile
+		for(int x = x1; x <= x2; x = (x | tileMask) + 1)
+		{
+			int end = Math.min(x | tileMask, x2);
+			int t = tileIndex(x, y);
+			if(isDefault && tiles.get(t) == null && !spilled[t])
+			{
+				continue;
+			}
+			float[] tile = writeTile(t);
+			if(channels == 1)
+			{
+				Arrays.fill(tile, offset(x, y), offset(end, y) + 1, value[0]);
+			}else
+			{
+				for(int i = offset(x, y); i <= offset(end, y); i += 4)
+				{
+					System.arraycopy(value, 0, tile, i, 4);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes a grey pixel, unless it is the default and its tile is untouched.
+	 */
+	private void write(int x, int y, float grey)
+	{
+		int t = tileIndex(x, y);
+		if(tiles.get(t) == null && !spilled[t] && grey == defaults[0])
+		{
+			return;
+		}
+		writeTile(t)[offset(x, y)] = grey;
+	}
+	
+	/**
+	 * Writes a color pixel, unless it is the default and its tile is untouched.
+	 */
+	private void write(int x, int y, float a, float r, float g, float b)
+	{
+		int t = tileIndex(x, y);
+		if(tiles.get(t) == null && !spilled[t] && a == defaults[ALPHA] && r == defaults[RED] && g == defaults[GREEN] && b == defaults[BLUE])
+		{
+			return;
+		}
+		float[] tile = writeTile(t);
+		int i = offset(x, y);
+		tile[i] = a;
+		tile[i + 1] = r;
+		tile[i + 2] = g;
+		tile[i + 3] = b;
+	}
+	
+	private int tileIndex(int x, int y)
+	{
+		return (x >> tileShift) + ((y >> tileShift) * tilesX);
+	}
+	
+	private int offset(int x, int y)
+	{
+		return ((x & tileMask) + ((y & tileMask) << tileShift)) * channels;
+	}
+	
+	/**
+	 * @return The tile holding the given pixel, or null if it is untouched.
+	 */
+	private float[] readTile(int x, int y)
+	{
+		int t = tileIndex(x, y);
+		float[] tile = tiles.get(t);
+		if(tile == null)
+		{
+			if(!spilled[t])
+			{
+				return null;
+			}
+			tile = load(t);
+		}
+		referenced[t] = true;
+		return tile;
+	}
+	
+	/**
+	 * @return The given tile, allocated or loaded if needed.
+	 */
+	private float[] writeTile(int t)
+	{
+		float[] tile = tiles.get(t);
+		if(tile == null)
+		{
+			tile = load(t);
+		}
+		referenced[t] = true;
+		return tile;
+	}
+	
+	/**
+	 * Brings a tile into memory, from the spill file or filled with the default.
+	 */
+	private synchronized float[] load(int t)
+	{
+		float[] current = tiles.get(t);
+		if(current != null)
+		{
+			return current;
+		}
+		if(residentLimit > 0 && resident >= residentLimit)
+		{
+			evict();
+		}
+		float[] tile = new float[channels << (tileShift << 1)];
+		if(spilled[t])
+		{
+			try
+			{
+				ByteBuffer buffer = spillBuffer();
+				buffer.clear();
+				long position = (long)t * buffer.capacity();
+				while(buffer.hasRemaining())
+				{
+					if(spillFile.getChannel().read(buffer, position + buffer.position()) < 0)
+					{
+						throw new IOException("Spill file truncated");
+					}
+				}
+				buffer.flip();
+				buffer.asFloatBuffer().get(tile);
+			}catch(IOException ex)
+			{
+				//the pixel accessors can't throw IOException, the tile is lost either way
+				throw new RuntimeException("Failed to reload spilled tile " + t, ex);
+			}
+		}else
+		if(channels == 1)
+		{
+			Arrays.fill(tile, defaults[0]);
+		}else
+		{
+			for(int i = 0; i < tile.length; i += 4)
+			{
+				System.arraycopy(defaults, 0, tile, i, 4);
+			}
+		}
+		tiles.set(t, tile);
+		resident++;
+		return tile;
+	}
+	
+	/**
+	 * Writes one cold tile to the spill file and drops it from memory.
+	 * @return False if there was nothing to evict or the write failed.
+	 */
+	private synchronized boolean evict()
+	{
+		//clock sweep, a tile used since the last pass gets a second chance
+		for(int i = 0; i < tiles.length() * 2; i++)
+		{
+			int t = hand;
+			hand = (hand + 1) % tiles.length();
+			if(tiles.get(t) == null)
+			{
+				continue;
+			}
+			if(referenced[t])
+			{
+				referenced[t] = false;
+				continue;
+			}
+			try
+			{
+				ByteBuffer buffer = spillBuffer();
+				buffer.clear();
+				buffer.asFloatBuffer().put(tiles.get(t));
+				FileChannel channel = spillFile.getChannel();
+				long position = (long)t * buffer.capacity();
+				while(buffer.hasRemaining())
+				{
+					channel.write(buffer, position + buffer.position());
+				}
+			}catch(IOException ex)
+			{
+				//keep it in memory
+				ex.printStackTrace();
+				return false;
+			}
+			tiles.set(t, null);
+			spilled[t] = true;
+			resident--;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return The buffer for moving one tile to or from the spill file, opening the file if needed.
+	 */
+	private ByteBuffer spillBuffer() throws IOException
+	{
+		if(spillFile == null)
+		{
+			spillPath = File.createTempFile("tiles", ".spill");
+			spillPath.deleteOnExit();
+			spillFile = new RandomAccessFile(spillPath, "rw");
+		}
+		if(spillBuffer == null)
+		{
+			spillBuffer = ByteBuffer.allocateDirect((channels << (tileShift << 1)) * 4).order(ByteOrder.nativeOrder());
+		}
+		return spillBuffer;
+	}
+}
@@ -9,10 +9,10 @@ import render.image.DoubleImage;
 import render.image.Image;
 import util.DefaultInterpolations;
 import util.Util;
+import util.pool.ScratchPool;
 
 public class Bloom implements ImageFilter
 {
-	public static final DoubleImage bloomStorage = new DoubleImage(1, 1);
 	public double threshold = .25;
 	public int blurRadius = 4;
 	public double baseIntensity = 1;
@@ -25,57 +25,66 @@ public class Bloom implements ImageFilter
 	@Override
 	public void filter(Image image)
 	{
-		//claim storage var
-		synchronized(bloomStorage)
+		//borrow this thread's storage, so blooms on other threads don't wait on us
+		ScratchPool scratch = ScratchPool.get();
+		DoubleImage bloomStorage = scratch.borrowDoubleImage(image.getWidth(), image.getHeight());
+		bloomStorage.blit(image);
+		//threshold each plane in place, a missing alpha plane is all 1 and stays that way
+		threshold(bloomStorage.getRedPlane());
+		threshold(bloomStorage.getGreenPlane());
+		threshold(bloomStorage.getBluePlane());
+		if(bloomStorage.getAlphaPlane() != null)
+		{
+			threshold(bloomStorage.getAlphaPlane());
+		}
+		blur.setRadius(blurRadius);
+		blur.filter(bloomStorage);
+		//pixels are written through set(), so mark them up front
+		image.markDirty(0, 0, image.getWidth(), image.getHeight());
+		DoubleARGB baseColor = DoubleARGB.pool.get();
+		DoubleARGB bloomColor = DoubleARGB.pool.get();
+		DoubleVector4D multiplier = DoubleVector4D.pool.get();
+		for(int y = 0; y < image.getHeight(); y++)
 		{
-			if(bloomStorage.getWidth() < image.getWidth() || bloomStorage.getHeight() < image.getHeight())
-			{
-				bloomStorage.resize(Math.max(bloomStorage.getWidth(), image.getWidth()), Math.max(bloomStorage.getHeight(), image.getHeight()));
-			}
-			bloomStorage.blit(image);
 			for(int x = 0; x < image.getWidth(); x++)
 			{
-				for(int y = 0; y < image.getHeight(); y++)
-				{
-					DoubleARGB color = (DoubleARGB)bloomStorage.get(x, y).subtract(threshold, threshold, threshold, threshold).divide(1 - threshold);
-					Util.clip(color, 0, 1);
-					bloomStorage.set(x, y, color);
-				}
+				baseColor.set(image.get(x, y));
+				bloomColor.set((Color)bloomStorage.get(x, y));
+				
+				adjustSaturation(baseColor, baseSaturation);
+				adjustSaturation(bloomColor, bloomSaturation);
+				
+				baseColor.multiply(baseIntensity);
+				if(baseIntensity != 0) baseColor.w /= baseIntensity;
+				bloomColor.multiply(bloomIntensity);
+				if(bloomIntensity != 0) bloomColor.w /= bloomIntensity;
+				
+				//darken down the base image in areas where there is a lot of bloom,
+			    //to prevent things looking excessively burned-out.
+				multiplier.set(1, 1, 1, 1).subtract(bloomColor);
+				//only clip RGB channels
+				Util.clip((Vector3D)multiplier, 0, 1);
+				multiplier.w = 1;//keep alpha unchanged
+				baseColor.multiply(multiplier);
+				
+				baseColor.add(bloomColor);
+				Util.clip(baseColor, 0, 1);
+				
+				image.set(x, y, baseColor);
 			}
-			blur.setRadius(blurRadius);
-			blur.filter(bloomStorage);
-			DoubleARGB baseColor = DoubleARGB.pool.get();
-			DoubleARGB bloomColor = DoubleARGB.pool.get();
-			DoubleVector4D multiplier = DoubleVector4D.pool.get();
-			for(int x = 0; x < image.getWidth(); x++)
-			{
-				for(int y = 0; y < image.getHeight(); y++)
-				{
-					baseColor.set(image.get(x, y));
-					bloomColor.set((Color)bloomStorage.get(x, y));
-					
-					adjustSaturation(baseColor, baseSaturation);
-					adjustSaturation(bloomColor, bloomSaturation);
-					
-					baseColor.multiply(baseIntensity);
-					if(baseIntensity != 0) baseColor.w /= baseIntensity;
-					bloomColor.multiply(bloomIntensity);
-					if(bloomIntensity != 0) bloomColor.w /= bloomIntensity;
-					
-					//darken down the base image in areas where there is a lot of bloom,
-				    //to prevent things looking excessively burned-out.
-					multiplier.set(1, 1, 1, 1).subtract(bloomColor);
-					//only clip RGB channels
-					Util.clip((Vector3D)multiplier, 0, 1);
-					multiplier.w = 1;//keep alpha unchanged
-					baseColor.multiply(multiplier);
-					
-					baseColor.add(bloomColor);
-					Util.clip(baseColor, 0, 1);
+		}
+		baseColor.dispose();
+		bloomColor.dispose();
+		DoubleVector4D.pool.release(multiplier);
+		scratch.release(bloomStorage);
+	}
 					
-					image.set(x, y, baseColor);
-				}
-			}
+	private void threshold(double[] plane)
+	{
+		double scale = 1 / (1 - threshold);
+		for(int i = 0; i < plane.length; i++)
+		{
+			plane[i] = Util.clip((plane[i] - threshold) * scale, 0, 1);
 		}
 	}
 	
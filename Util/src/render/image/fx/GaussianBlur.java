@@ -1,13 +1,18 @@
 package render.image.fx;
 
-import render.color.DoubleARGB;
+import java.util.Arrays;
 import render.image.DoubleImage;
 import render.image.Image;
 import util.Util;
+import util.pool.ScratchPool;
 
 public class GaussianBlur implements ImageFilter
 {
-	private static final Image storage = new DoubleImage(1, 1);
+	/**
+	 * Stands in for a channel index when blurring the grey value of a grey image.
+	 */
+	private static final int GREY = -1;
+	
 	private int radius;
 	private double[] weights;
 	
@@ -51,45 +56,125 @@ public class GaussianBlur implements ImageFilter
 	@Override
 	public void filter(Image image)
 	{
-		//claim storage var
-		synchronized(storage)
+		int w = image.getWidth();
+		int h = image.getHeight();
+		//skip channels the image doesn't have, grey images blur their grey value as is
+		boolean grey = image.hasGrey() && !image.hasColor() && !image.hasAlpha();
+		int first = grey ? GREY : image.hasAlpha() ? Image.ALPHA : Image.RED;
+		int last = grey ? GREY : image.hasColor() ? Image.BLUE : Image.RED;
+		long planes = (long)w * h * (last - first + 1);
+		if(planes > Integer.MAX_VALUE)
 		{
-			if(storage.getWidth() < image.getWidth() || storage.getHeight() < image.getHeight())
-			{
-				storage.resize(Math.max(storage.getWidth(), image.getWidth()), Math.max(storage.getHeight(), image.getHeight()));
-			}
-			DoubleARGB blurColor = DoubleARGB.pool.get();
-			DoubleARGB pixelColor = DoubleARGB.pool.get();
-			for(int x = 0; x < image.getWidth(); x++)
+			throw new IllegalArgumentException("Image of " + w + "x" + h + " is too large to blur");
+		}
+		int size = w * h;
+		//rows are written straight back, so mark them up front
+		image.markDirty(0, 0, w, h);
+		//borrow this thread's storage, so blurs on other threads don't wait on us
+		ScratchPool scratch = ScratchPool.get();
+		double[] storage = scratch.borrowDoubles((int)planes);
+		double[] row = scratch.borrowDoubles(w);
+		double[] sums = scratch.borrowDoubles(w);
+		float[] temp = scratch.borrowFloats(w);
+		//blur the rows into storage, one plane per channel
+		for(int c = first; c <= last; c++)
+		{
+			for(int y = 0; y < h; y++)
 			{
-				for(int y = 0; y < image.getHeight(); y++)
+				readRow(image, c, y, w, row, temp);
+				int start = ((c - first) * size) + (y * w);
+				for(int x = 0; x < w; x++)
 				{
-					blurColor.set(0, 0, 0, 0);
+					double sum = 0;
 					for(int i = -radius; i <= radius; i++)
 					{
-						pixelColor.set(image.get(Util.clip(x + i, 0, image.getWidth() - 1), y));
-						pixelColor.multiply(weights[i + radius]);
-						blurColor.add(pixelColor);
+						sum += weights[i + radius] * row[Util.clip(x + i, 0, w - 1)];
 					}
-					storage.set(x, y, blurColor);
+					storage[start + x] = sum;
 				}
 			}
-			for(int x = 0; x < image.getWidth(); x++)
+		}
+		//blur the columns back into the image, a whole source row at a time
+		for(int c = first; c <= last; c++)
+		{
+			for(int y = 0; y < h; y++)
 			{
-				for(int y = 0; y < image.getHeight(); y++)
+				Arrays.fill(sums, 0, w, 0);
+				for(int i = -radius; i <= radius; i++)
 				{
-					blurColor.set(0, 0, 0, 0);
-					for(int i = -radius; i <= radius; i++)
+					double weight = weights[i + radius];
+					int start = ((c - first) * size) + (Util.clip(y + i, 0, h - 1) * w);
+					for(int x = 0; x < w; x++)
 					{
-						pixelColor.set(storage.get(x, Util.clip(y + i, 0, image.getHeight() - 1)));
-						pixelColor.multiply(weights[i + radius]);
-						blurColor.add(pixelColor);
+						sums[x] += weight * storage[start + x];
 					}
-					image.set(x, y, blurColor);
 				}
+				writeRow(image, c, y, w, sums, temp);
 			}
-			blurColor.dispose();
-			pixelColor.dispose();
+		}
+		scratch.release(temp);
+		scratch.release(sums);
+		scratch.release(row);
+		scratch.release(storage);
+	}
+	
+	/**
+	 * Reads a row of one channel, or of the grey value, at full precision.
+	 */
+	private static void readRow(Image image, int c, int y, int w, double[] row, float[] temp)
+	{
+		if(c == GREY)
+		{
+			image.getGreyRow(0, y, w, row, 0);
+		}else
+		if(image instanceof DoubleImage)
+		{
+			System.arraycopy(plane((DoubleImage)image, c), y * w, row, 0, w);
+		}else
+		{
+			//the other color images keep floats or bytes, so a float row loses nothing
+			image.getRow(0, y, w, c, temp, 0);
+			for(int x = 0; x < w; x++)
+			{
+				row[x] = temp[x];
+			}
+		}
+	}
+	
+	/**
+	 * Writes a row of one channel, or of the grey value, at full precision.
+	 */
+	private static void writeRow(Image image, int c, int y, int w, double[] row, float[] temp)
+	{
+		if(c == GREY)
+		{
+			image.setGreyRow(0, y, w, row, 0);
+		}else
+		if(image instanceof DoubleImage)
+		{
+			System.arraycopy(row, 0, plane((DoubleImage)image, c), y * w, w);
+		}else
+		{
+			for(int x = 0; x < w; x++)
+			{
+				temp[x] = (float)row[x];
+			}
+			image.setRow(0, y, w, c, temp, 0);
+		}
+	}
+	
+	private static double[] plane(DoubleImage image, int c)
+	{
+		switch(c)
+		{
+			case Image.ALPHA:
+				return image.getAlphaPlane();
+			case Image.RED:
+				return image.getRedPlane();
+			case Image.GREEN:
+				return image.getGreenPlane();
+			default:
+				return image.getBluePlane();
 		}
 	}
 }
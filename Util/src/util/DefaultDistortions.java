@@ -1,6 +1,5 @@
 package util;
 
-import render.color.Color;
 import render.image.Image;
 
 /**
@@ -15,54 +14,74 @@ public class DefaultDistortions
 	/**
 	 * Distorts using the slope of the pixels
 	 */
-	public static final Distortion SLOPE = new Distortion()
+	public static final Distortion SLOPE = new OffsetDistortion()
 	{
 		@Override
-		public Color distort(int x, int y, Image base, Image distort, double amplitude)
+		public int getSourceX(int x, int y, Image distort, double amplitude)
 		{
-			double slopeX = DefaultInterpolations.LINEAR.interpolate(distort.get(x, y).getGrey() - distort.get(x - 1, y).getGrey(), distort.get(x + 1, y).getGrey() - distort.get(x, y).getGrey(), .5);
-			double slopeY = DefaultInterpolations.LINEAR.interpolate(distort.get(x, y).getGrey() - distort.get(x, y - 1).getGrey(), distort.get(x, y + 1).getGrey() - distort.get(x, y).getGrey(), .5);
-			return base.get(x + (int)Math.round(slopeX * amplitude), y + (int)Math.round(slopeY * amplitude));
+			double slopeX = DefaultInterpolations.LINEAR.interpolate(distort.getGrey(x, y) - distort.getGrey(x - 1, y), distort.getGrey(x + 1, y) - distort.getGrey(x, y), .5);
+			return x + (int)Math.round(slopeX * amplitude);
+		}
+		
+		@Override
+		public int getSourceY(int x, int y, Image distort, double amplitude)
+		{
+			double slopeY = DefaultInterpolations.LINEAR.interpolate(distort.getGrey(x, y) - distort.getGrey(x, y - 1), distort.getGrey(x, y + 1) - distort.getGrey(x, y), .5);
+			return y + (int)Math.round(slopeY * amplitude);
 		}
 	};
 	
 	/**
 	 * Distorts on the x axis.
 	 */
-	public static final Distortion X_OFFSET = new Distortion()
+	public static final Distortion X_OFFSET = new OffsetDistortion()
 	{
 		@Override
-		public Color distort(int x, int y, Image base, Image distort, double amplitude)
+		public int getSourceX(int x, int y, Image distort, double amplitude)
+		{
+			return x + (int)Math.round((distort.getGrey(x, y) - .5) * 2 * amplitude);
+		}
+		
+		@Override
+		public int getSourceY(int x, int y, Image distort, double amplitude)
 		{
-			int offsetX = (int)Math.round((distort.get(x, y).getGrey() - .5) * 2 * amplitude);
-			return base.get(x + offsetX, y);
+			return y;
 		}
 	};
 	
 	/**
 	 * Distorts on the y axis.
 	 */
-	public static final Distortion Y_OFFSET = new Distortion()
+	public static final Distortion Y_OFFSET = new OffsetDistortion()
 	{
 		@Override
-		public Color distort(int x, int y, Image base, Image distort, double amplitude)
+		public int getSourceX(int x, int y, Image distort, double amplitude)
 		{
-			int offsetY = (int)Math.round((distort.get(x, y).getGrey() - .5) * 2 * amplitude);
-			return base.get(x, y + offsetY);
+			return x;
+		}
+		
+		@Override
+		public int getSourceY(int x, int y, Image distort, double amplitude)
+		{
+			return y + (int)Math.round((distort.getGrey(x, y) - .5) * 2 * amplitude);
 		}
 	};
 	
 	/**
 	 * Distorts on both axis.
 	 */
-	public static final Distortion BOTH_OFFSET = new Distortion()
+	public static final Distortion BOTH_OFFSET = new OffsetDistortion()
 	{
 		@Override
-		public Color distort(int x, int y, Image base, Image distort, double amplitude)
+		public int getSourceX(int x, int y, Image distort, double amplitude)
+		{
+			return x + (int)Math.round((distort.getGrey(x, y) - .5) * 2 * amplitude);
+		}
+		
+		@Override
+		public int getSourceY(int x, int y, Image distort, double amplitude)
 		{
-			int offsetX = (int)Math.round((distort.get(x, y).getGrey() - .5) * 2 * amplitude);
-			int offsetY = (int)Math.round((distort.get(y, x).getGrey() - .5) * 2 * amplitude);
-			return base.get(x + offsetX, y + offsetY);
+			return y + (int)Math.round((distort.getGrey(y, x) - .5) * 2 * amplitude);
 		}
 	};
 }
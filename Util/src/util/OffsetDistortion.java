@@ -0,0 +1,83 @@
+package util;
+
+import render.color.Color;
+import render.image.Image;
+
+/**
+ * 
+ * A Distortion that moves each pixel to a source position, instead of computing its color.
+ * Subclasses provide getSourceX() and getSourceY(). Images are then distorted by copying pixels through the primitive accessors,
+ * so no Color is touched. Distortions that need to compute colors extend Distortion directly and override distort().
+ * 
+ * @author F4113nb34st
+ *
+ */
+public abstract class OffsetDistortion extends Distortion
+{
+	/**
+	 * Finds the x location in the base image that the given pixel is taken from.
+	 * @param x The original x.
+	 * @param y The original y.
+	 * @param distort The distortion image.
+	 * @param amplitude The amplitude of the distortion.
+	 * @return The distorted x.
+	 */
+	public abstract int getSourceX(int x, int y, Image distort, double amplitude);
+	
+	/**
+	 * Finds the y location in the base image that the given pixel is taken from.
+	 * @param x The original x.
+	 * @param y The original y.
+	 * @param distort The distortion image.
+	 * @param amplitude The amplitude of the distortion.
+	 * @return The distorted y.
+	 */
+	public abstract int getSourceY(int x, int y, Image distort, double amplitude);
+	
+	/**
+	 * Returns the base pixel at the source position. Final, as distorting a whole image doesn't go through here.
+	 */
+	@Override
+	public final Color distort(int x, int y, Image base, Image distort, double amplitude)
+	{
+		return base.get(getSourceX(x, y, distort, amplitude), getSourceY(x, y, distort, amplitude));
+	}
+	
+	/**
+	 * Distorts an image using the given distortion image and amplitude into the given output.
+	 * Pixels are copied through the primitive accessors, so no Color is touched.
+	 * @param input The input image.
+	 * @param distort The distortion image.
+	 * @param output The output image.
+	 * @param amplitude The amplitude of the distortion.
+	 */
+	@Override
+	public void distort(Image input, Image distort, Image output, double amplitude)
+	{
+		boolean color = output.hasColor();
+		boolean grey = output.hasGrey();
+		int first = output.hasAlpha() ? Image.ALPHA : Image.RED;
+		for(int y = 0; y < output.getHeight(); y++)
+		{
+			for(int x = 0; x < output.getWidth(); x++)
+			{
+				int sourceX = getSourceX(x, y, distort, amplitude);
+				int sourceY = getSourceY(x, y, distort, amplitude);
+				if(color)
+				{
+					for(int c = first; c <= Image.BLUE; c++)
+					{
+						output.setChannel(x, y, c, input.getChannel(sourceX, sourceY, c));
+					}
+				}else
+				if(grey)
+				{
+					output.setGrey(x, y, input.getGrey(sourceX, sourceY));
+				}else
+				{
+					output.setChannel(x, y, Image.ALPHA, input.getChannel(sourceX, sourceY, Image.ALPHA));
+				}
+			}
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package util.concurrent;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 
  * Class that represents a task that will be executed simultaneously on multiple threads over an array.
+ * Threads claim chunks of indices at a time, sized according to the task's Schedule.
  * 
  * @author F4113nb34st
  *
@@ -10,17 +13,52 @@ package util.concurrent;
 public abstract class ArrayTask implements Runnable
 {
 	/**
-	 * The maximum value. The task stops when we go over this value.
+	 * How indices are divided into chunks.
+	 */
+	public enum Schedule
+	{
+		/**
+		 * One even chunk per part, claimed once each. Lowest overhead, no load balancing.
+		 */
+		STATIC,
+		/**
+		 * Fixed sized chunks claimed until done.
+		 */
+		DYNAMIC,
+		/**
+		 * Chunks proportional to the remaining work, shrinking toward the chunk size as the task finishes.
+		 */
+		GUIDED;
+	}
+	
+	/**
+	 * The min value.
 	 */
-	private final int max;
+	private final int min;
 	/**
 	 * The increment size.
 	 */
 	private final int increment;
 	/**
-	 * The current index. Incremented on getX() calls.
+	 * The total number of indices in this task.
+	 */
+	private final int count;
+	/**
+	 * The number of indices claimed so far.
+	 */
+	private final AtomicInteger claimed = new AtomicInteger();
+	/**
+	 * The chunking schedule.
 	 */
-	private volatile int index;
+	private Schedule schedule = Schedule.GUIDED;
+	/**
+	 * The chunk size for DYNAMIC, or the smallest chunk for GUIDED.
+	 */
+	private int chunkSize = 1;
+	/**
+	 * The number of threads expected to work on this task.
+	 */
+	private int parts = Runtime.getRuntime().availableProcessors();
 	
 	/**
 	 * Creates a new ArrayTask with the given min and max values.
@@ -40,47 +78,105 @@ public abstract class ArrayTask implements Runnable
 	 */
 	public ArrayTask(int mi, int ma, int inc)
 	{
-		max = ma;
+		min = mi;
 		increment = inc;
-		//since index is incremented before returned, start increment less than min so first value is min
-		index = mi - increment;
+		count = ma < mi ? 0 : ((ma - mi) / inc) + 1;
+	}
+	
+	/**
+	 * Sets the chunking schedule of this ArrayTask.
+	 * @param sched The schedule.
+	 */
+	public ArrayTask setSchedule(Schedule sched)
+	{
+		schedule = sched;
+		return this;
 	}
 	
 	/**
-	 * Gets the next index value.
-	 * @return The index value or -1 if we are done.
+	 * Sets the chunk size of this ArrayTask. Used as the fixed size for DYNAMIC and the minimum size for GUIDED.
+	 * @param size The chunk size.
 	 */
-	private synchronized int getX()
+	public ArrayTask setChunkSize(int size)
 	{
-		index += increment;
-		if(index <= max)
+		chunkSize = Math.max(size, 1);
+		return this;
+	}
+	
+	/**
+	 * Sets the number of threads expected to work on this ArrayTask, typically the pool size.
+	 * @param p The number of parts.
+	 */
+	public ArrayTask setParts(int p)
+	{
+		parts = Math.max(p, 1);
+		return this;
+	}
+	
+	/**
+	 * Claims the next chunk of indices.
+	 * @return The packed start (high) and length (low) of the chunk, or -1 if we are done.
+	 */
+	private long claim()
+	{
+		int start;
+		int size;
+		switch(schedule)
 		{
-			return index;
-		}else
+			case STATIC:
+				size = (count + parts - 1) / parts;
+				start = claimed.getAndAdd(size);
+				break;
+			case DYNAMIC:
+				size = chunkSize;
+				start = claimed.getAndAdd(size);
+				break;
+			default:
+				//chunk is a share of what's left, so early chunks are big and late ones small
+				do
+				{
+					start = claimed.get();
+					if(start >= count)
+					{
+						return -1;
+					}
+					size = Math.max((count - start) / (parts * 2), chunkSize);
+				}while(!claimed.compareAndSet(start, start + size));
+				break;
+		}
+		//getAndAdd may overshoot, so clamp to the end rather than running past it
+		if(start >= count || start < 0)
 		{
 			return -1;
 		}
+		size = Math.min(size, count - start);
+		return ((long)start << 32) | size;
 	}
 	
 	@Override
 	public void run()
 	{
-		try
+		long chunk;
+		//loop until done (chunk == -1)
+		while((chunk = claim()) != -1)
 		{
-			int x;
-			//loop until done (x == -1)
-			while(true)
-			{
-				x = getX();
-				if(x == -1)
-				{
-					break;
-				}
-				run(x);
-			}
-		}catch(ArrayIndexOutOfBoundsException ex)
+			int first = (int)(chunk >>> 32);
+			int size = (int)chunk;
+			run(min + (first * increment), min + ((first + size - 1) * increment));
+		}
+	}
+	
+	/**
+	 * Performs the required operation on the given range of x values.
+	 * Override to process a whole chunk at once.
+	 * @param first The first index value, inclusive.
+	 * @param last The last index value, inclusive.
+	 */
+	protected void run(int first, int last)
+	{
+		for(int x = first; x <= last; x += increment)
 		{
-			//rarely we go over, if we do, don't worry about it
+			run(x);
 		}
 	}
 	
@@ -0,0 +1,128 @@
+package util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * A lock-free histogram of durations in nanoseconds. Buckets are powers of two, so recording is a couple of atomic adds.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class LatencyHistogram
+{
+	/**
+	 * The number of buckets. Bucket i holds durations in [2^(i-1), 2^i), bucket 0 holds 0.
+	 */
+	public static final int BUCKETS = 64;
+	
+	/**
+	 * The count of each bucket.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	
+	/**
+	 * The sum of all recorded durations.
+	 */
+	private final AtomicLong total = new AtomicLong();
+	
+	/**
+	 * The longest recorded duration.
+	 */
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Records the given duration.
+	 * @param nanos The duration in nanoseconds.
+	 */
+	public void record(long nanos)
+	{
+		nanos = Math.max(nanos, 0);
+		counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+		total.addAndGet(nanos);
+		long prev;
+		while(nanos > (prev = max.get()) && !max.compareAndSet(prev, nanos));
+	}
+	
+	/**
+	 * @return The number of recorded durations.
+	 */
+	public long getCount()
+	{
+		long count = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			count += counts.get(i);
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the count of the given bucket.
+	 * @param bucket The bucket index.
+	 * @return The count.
+	 */
+	public long getBucketCount(int bucket)
+	{
+		return counts.get(bucket);
+	}
+	
+	/**
+	 * @return The sum of all recorded durations in nanoseconds.
+	 */
+	public long getTotal()
+	{
+		return total.get();
+	}
+	
+	/**
+	 * @return The mean recorded duration in nanoseconds.
+	 */
+	public double getMean()
+	{
+		long count = getCount();
+		return count == 0 ? 0 : total.get() / (double)count;
+	}
+	
+	/**
+	 * @return The longest recorded duration in nanoseconds.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	/**
+	 * Returns an upper bound for the given percentile, accurate to a power of two.
+	 * @param percentile The percentile, from 0 to 1.
+	 * @return The duration in nanoseconds.
+	 */
+	public long getPercentile(double percentile)
+	{
+		long target = (long)Math.ceil(getCount() * percentile);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			if(seen >= target && seen > 0)
+			{
+				return i == 0 ? 0 : Math.min((1L << i) - 1, max.get());
+			}
+		}
+		return max.get();
+	}
+	
+	/**
+	 * Clears all recorded durations.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+		total.set(0);
+		max.set(0);
+	}
+}
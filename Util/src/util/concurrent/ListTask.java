@@ -1,51 +1,88 @@
 package util.concurrent;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 
+ * Class that represents a task that will be executed simultaneously on multiple threads over a list.
+ * The list is copied into an array up front and split into batches of indices, which threads then claim without locking.
+ * 
+ * @author F4113nb34st
+ *
+ */
 public abstract class ListTask<E> implements Runnable
 {
 	/**
-	 * The current index. Incremented on getLoc() calls.
+	 * The snapshot of the list.
 	 */
-	private volatile Iterator<E> iter;
+	private final Object[] elements;
 	
+	/**
+	 * The number of elements in each batch.
+	 */
+	private final int batchSize;
+	
+	/**
+	 * The index of the next batch to claim.
+	 */
+	private final AtomicInteger nextBatch = new AtomicInteger();
+	
+	/**
+	 * Creates a new ListTask over the given list, split into a few batches per available processor.
+	 * @param list The list.
+	 */
 	public ListTask(Iterable<E> list)
 	{
-		iter = list.iterator();
+		this(list, Runtime.getRuntime().availableProcessors() * 4);
 	}
 	
-	public synchronized E getObj()
+	/**
+	 * Creates a new ListTask over the given list, split into about the given number of batches.
+	 * @param list The list.
+	 * @param numBatches The target number of batches.
+	 */
+	public ListTask(Iterable<E> list, int numBatches)
 	{
-		if(iter.hasNext())
+		if(list instanceof Collection)
 		{
-			return iter.next();
+			elements = ((Collection<E>)list).toArray();
 		}else
 		{
-			return null;
+			ArrayList<E> copy = new ArrayList<E>();
+			for(E obj : list)
+			{
+				copy.add(obj);
+			}
+			elements = copy.toArray();
 		}
+		//round up, so there are never more than numBatches batches
+		int n = Math.max(numBatches, 1);
+		batchSize = Math.max(1, elements.length / n + (elements.length % n == 0 ? 0 : 1));
 	}
 	
 	@Override
+	@SuppressWarnings("unchecked")
 	public void run()
 	{
-		try
+		int numBatches = elements.length / batchSize + (elements.length % batchSize == 0 ? 0 : 1);
+		int batch;
+		//loop until all batches claimed
+		while((batch = nextBatch.getAndIncrement()) < numBatches)
 		{
-			E obj;
-			//loop until done (x == -1)
-			while(true)
+			int start = batch * batchSize;
+			int end = start + Math.min(batchSize, elements.length - start);
+			for(int i = start; i < end; i++)
 			{
-				obj = getObj();
-				if(obj == null)
-				{
-					break;
-				}
-				run(obj);
+				run((E)elements[i]);
 			}
-		}catch(ArrayIndexOutOfBoundsException ex)
-		{
-			//rarely we go over, if we do, don't worry about it
 		}
 	}
 	
+	/**
+	 * Performs the required operation on the given object.
+	 * @param obj The object to operate on.
+	 */
 	public abstract void run(E obj);
 }
@@ -0,0 +1,245 @@
+package util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * Live counters for a ThreadPool. Per-thread values are only written by their own thread, so collecting them is cheap enough to leave on.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class PoolStats
+{
+	/**
+	 * The counters of a single child thread. Only written by that thread.
+	 */
+	static class WorkerStats
+	{
+		volatile long tasksRun;
+		volatile long steals;
+		volatile long idleNanos;
+		
+		/**
+		 * True while hibernating, since idleSince.
+		 */
+		volatile boolean idle;
+		volatile long idleSince;
+	}
+	
+	/**
+	 * The time these stats were created or last reset.
+	 */
+	private volatile long startTime = System.nanoTime();
+	
+	/**
+	 * The number of tasks added to the pool.
+	 */
+	private final AtomicLong queued = new AtomicLong();
+	
+	/**
+	 * The number of tasks that have begun running.
+	 */
+	private final AtomicLong started = new AtomicLong();
+	
+	/**
+	 * The number of tasks that have finished running.
+	 */
+	private final AtomicLong completed = new AtomicLong();
+	
+	/**
+	 * The time tasks spend queued before they start.
+	 */
+	private final LatencyHistogram queueWait = new LatencyHistogram();
+	
+	/**
+	 * The time tasks spend running.
+	 */
+	private final LatencyHistogram executionTime = new LatencyHistogram();
+	
+	/**
+	 * The counters of each child thread.
+	 */
+	final WorkerStats[] workers;
+	
+	PoolStats(int numWorkers)
+	{
+		workers = new WorkerStats[numWorkers];
+		for(int i = 0; i < workers.length; i++)
+		{
+			workers[i] = new WorkerStats();
+		}
+	}
+	
+	void taskQueued(int count)
+	{
+		queued.addAndGet(count);
+	}
+	
+	void taskStarted(long queuedAt, long now)
+	{
+		started.incrementAndGet();
+		queueWait.record(now - queuedAt);
+	}
+	
+	void taskCompleted(long nanos)
+	{
+		completed.incrementAndGet();
+		executionTime.record(nanos);
+	}
+	
+	/**
+	 * Marks the given child thread as hibernating from now on, so its busy ratio drops while it sleeps.
+	 */
+	void idleStarted(WorkerStats worker, long now)
+	{
+		worker.idleSince = now;
+		worker.idle = true;
+	}
+	
+	/**
+	 * Credits the given child thread with the time since idleStarted().
+	 */
+	void idleEnded(WorkerStats worker, long now)
+	{
+		//only the part since the last reset counts
+		worker.idleNanos += now - Math.max(worker.idleSince, startTime);
+		worker.idle = false;
+	}
+	
+	/**
+	 * @return The number of tasks added to the pool.
+	 */
+	public long getTasksQueued()
+	{
+		return queued.get();
+	}
+	
+	/**
+	 * @return The number of tasks that have finished running.
+	 */
+	public long getTasksRun()
+	{
+		return completed.get();
+	}
+	
+	/**
+	 * @return The number of tasks waiting to start, including submitted tasks whose dependencies are done.
+	 */
+	public long getQueueDepth()
+	{
+		return Math.max(queued.get() - started.get(), 0);
+	}
+	
+	/**
+	 * @return The number of tasks currently running.
+	 */
+	public long getTasksRunning()
+	{
+		return Math.max(started.get() - completed.get(), 0);
+	}
+	
+	/**
+	 * @return The histogram of the time tasks spend queued before they start.
+	 */
+	public LatencyHistogram getQueueWait()
+	{
+		return queueWait;
+	}
+	
+	/**
+	 * @return The histogram of the time tasks spend running.
+	 */
+	public LatencyHistogram getExecutionTime()
+	{
+		return executionTime;
+	}
+	
+	/**
+	 * @return The number of child threads. Zero in virtual mode.
+	 */
+	public int getWorkerCount()
+	{
+		return workers.length;
+	}
+	
+	/**
+	 * Returns the number of tasks run by the given child thread.
+	 * @param worker The index of the child thread.
+	 * @return The number of tasks.
+	 */
+	public long getWorkerTasksRun(int worker)
+	{
+		return workers[worker].tasksRun;
+	}
+	
+	/**
+	 * Returns the number of tasks the given child thread stole from the others.
+	 * @param worker The index of the child thread.
+	 * @return The number of steals.
+	 */
+	public long getWorkerSteals(int worker)
+	{
+		return workers[worker].steals;
+	}
+	
+	/**
+	 * Returns the fraction of time the given child thread has spent out of hibernation since the stats were last reset.
+	 * A thread hibernating right now counts as idle up to now.
+	 * @param worker The index of the child thread.
+	 * @return The busy ratio, from 0 to 1.
+	 */
+	public double getWorkerBusyRatio(int worker)
+	{
+		long now = System.nanoTime();
+		long start = startTime;
+		long elapsed = now - start;
+		if(elapsed <= 0)
+		{
+			return 0;
+		}
+		WorkerStats stats = workers[worker];
+		long idle = stats.idleNanos;
+		if(stats.idle)
+		{
+			idle += now - Math.max(stats.idleSince, start);
+		}
+		//a thread waking mid read may be counted twice, clamp it
+		return Math.min(1, Math.max(0, 1 - (idle / (double)elapsed)));
+	}
+	
+	/**
+	 * Clears all counters. Tasks in flight when called may leave the queue depth briefly off.
+	 */
+	public void reset()
+	{
+		startTime = System.nanoTime();
+		queued.set(0);
+		started.set(0);
+		completed.set(0);
+		queueWait.reset();
+		executionTime.reset();
+		for(int i = 0; i < workers.length; i++)
+		{
+			workers[i].tasksRun = 0;
+			workers[i].steals = 0;
+			workers[i].idleNanos = 0;
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("queued=").append(getTasksQueued());
+		builder.append(" run=").append(getTasksRun());
+		builder.append(" depth=").append(getQueueDepth());
+		builder.append(" wait(mean/p99)=").append((long)queueWait.getMean()).append('/').append(queueWait.getPercentile(.99)).append("ns");
+		builder.append(" exec(mean/p99)=").append((long)executionTime.getMean()).append('/').append(executionTime.getPercentile(.99)).append("ns");
+		for(int i = 0; i < workers.length; i++)
+		{
+			builder.append(String.format(" [%d: busy=%.2f run=%d steals=%d]", i, getWorkerBusyRatio(i), workers[i].tasksRun, workers[i].steals));
+		}
+		return builder.toString();
+	}
+}
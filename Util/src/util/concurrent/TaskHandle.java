@@ -0,0 +1,149 @@
+package util.concurrent;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 
+ * A handle to a task submitted to a ThreadPool. Can be waited on, or passed as a dependency of other submitted tasks.
+ * 
+ * @author F4113nb34st
+ *
+ */
+public class TaskHandle
+{
+	/**
+	 * The pool the task runs on.
+	 */
+	private final ThreadPool pool;
+	
+	/**
+	 * The task.
+	 */
+	private final Runnable task;
+	
+	/**
+	 * 1 until the task completes, then 0.
+	 */
+	private final AtomicInteger unfinished = new AtomicInteger(1);
+	
+	/**
+	 * The number of dependencies not yet completed, plus one until submission finishes.
+	 */
+	private final AtomicInteger waitingOn;
+	
+	/**
+	 * The tasks that depend on this one. Null once this task completes.
+	 */
+	private ArrayList<TaskHandle> dependents = new ArrayList<TaskHandle>();
+	
+	/**
+	 * The exception or error thrown by the task or one of its dependencies.
+	 */
+	private volatile Throwable failure;
+	
+	/**
+	 * The runner the pool queues for this task.
+	 */
+	final Runnable runner = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			execute();
+		}
+	};
+	
+	TaskHandle(ThreadPool p, Runnable t, int numDependencies)
+	{
+		pool = p;
+		task = t;
+		waitingOn = new AtomicInteger(numDependencies + 1);
+	}
+	
+	/**
+	 * @return True if the task has completed, successfully or not.
+	 */
+	public boolean isDone()
+	{
+		return unfinished.get() == 0;
+	}
+	
+	/**
+	 * @return The exception or error thrown by the task or one of its dependencies, or null if none.
+	 */
+	public Throwable getFailure()
+	{
+		return failure;
+	}
+	
+	/**
+	 * Waits for the task to complete. Safe to call from inside a task of the same pool.
+	 */
+	public void waitFor()
+	{
+		pool.waitOn(unfinished);
+	}
+	
+	/**
+	 * Registers the given task to be told when this one completes.
+	 * @param handle The dependent task.
+	 * @return False if this task has already completed.
+	 */
+	synchronized boolean addDependent(TaskHandle handle)
+	{
+		if(dependents == null)
+		{
+			return false;
+		}
+		dependents.add(handle);
+		return true;
+	}
+	
+	/**
+	 * Tells this task one of its dependencies has completed. Schedules it once all have.
+	 * @param dependency The dependency, or null to release the submission's hold.
+	 */
+	void dependencyDone(TaskHandle dependency)
+	{
+		if(dependency != null && dependency.failure != null)
+		{
+			failure = dependency.failure;
+		}
+		if(waitingOn.decrementAndGet() == 0)
+		{
+			pool.schedule(this);
+		}
+	}
+	
+	/**
+	 * Runs the task unless a dependency failed, then releases its dependents.
+	 * Errors are recorded too, so waiters and dependents are never left hanging.
+	 */
+	private void execute()
+	{
+		try
+		{
+			if(failure == null)
+			{
+				task.run();
+			}
+		}catch(Throwable ex)
+		{
+			failure = ex;
+		}finally
+		{
+			ArrayList<TaskHandle> done;
+			synchronized(this)
+			{
+				done = dependents;
+				dependents = null;
+			}
+			ThreadPool.countDown(unfinished);
+			for(TaskHandle dependent : done)
+			{
+				dependent.dependencyDone(this);
+			}
+		}
+	}
+}
@@ -1,41 +1,206 @@
 package util.concurrent;
 
-import java.util.concurrent.locks.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * 
+ * A barrier that holds threads in waitFor() until another thread calls trip().
+ * Waiters spin briefly, then yield, then park, so a trip that comes quickly is seen without a park/unpark round trip.
+ * A trip with no one waiting is lost, waiters only see trips made after they arrive.
+ * 
+ * @author F4113nb34st
+ *
+ */
 public class ThreadBarrier
 {
-	private final ReentrantLock lock = new ReentrantLock();
-	private final Condition trip = lock.newCondition();
+	/**
+	 * The number of busy checks before yielding.
+	 */
+	private static final int SPINS = 2000;
 
+	/**
+	 * The number of yielding checks before parking.
+	 */
+	private static final int YIELDS = 50;
+	
+	/**
+	 * Incremented on every trip.
+	 */
+	private final AtomicInteger phase = new AtomicInteger();
+	
+	/**
+	 * The number of threads currently in waitFor().
+	 */
+	private final AtomicInteger waiting = new AtomicInteger();
+	
+	/**
+	 * The threads parked in waitFor().
+	 */
+	private final ConcurrentLinkedQueue<Thread> parked = new ConcurrentLinkedQueue<Thread>();
+	
+	/**
+	 * If true, waitFor() returns immediately.
+	 */
+	private volatile boolean freeReign = false;
+	
+	/**
+	 * The time of the last trip.
+	 */
+	private volatile long tripTime;
+	
+	/**
+	 * The number of trips made with no one waiting.
+	 */
+	private final AtomicLong missedTrips = new AtomicLong();
+	
+	/**
+	 * The time threads spend in waitFor().
+	 */
+	private final LatencyHistogram waitTime = new LatencyHistogram();
+	
+	/**
+	 * The time between a trip and the waiting thread noticing it.
+	 */
+	private final LatencyHistogram wakeLatency = new LatencyHistogram();
+	
+	/**
+	 * Sets the free reign of this barrier.
+	 * If it has free reign, it will not stop threads in waitFor();
+	 * @param free Whether or not to allow free reign.
+	 */
+	public void setFreeReign(boolean free)
+	{
+		freeReign = free;
+		if(freeReign)//if we are getting free reign, trip the barrier.
+		{
+			trip();
+		}
+	}
+
+	/**
+	 * @return True if this barrier has free reign.
+	 */
+	public boolean hasFreeReign()
+	{
+		return freeReign;
+	}
+	
+	/**
+	 * Releases all threads waiting on this barrier.
+	 */
 	public void trip()
 	{
-		final ReentrantLock lock = this.lock;
-		lock.lock();
-		try
+		if(waiting.get() == 0)
 		{
-			trip.signalAll();
-		}finally
+			missedTrips.incrementAndGet();
+		}
+		tripTime = System.nanoTime();
+		phase.incrementAndGet();
+		Thread thread;
+		while((thread = parked.poll()) != null)
 		{
-			lock.unlock();
+			LockSupport.unpark(thread);
 		}
 	}
-
-	public void waitFor()
+	
+	/**
+	 * Waits for this barrier to be tripped, or returns immediately if it has free reign.
+	 * An interrupt ends the wait early, as it did when this was built on a CyclicBarrier. It is cleared and printed, so the next wait still blocks.
+	 * @return The time waited in nanoseconds.
+	 */
+	public long waitFor()
 	{
-		final ReentrantLock lock = this.lock;
-		lock.lock();
+		if(freeReign)
+		{
+			return 0;
+		}
+		long start = System.nanoTime();
+		int entry = phase.get();
+		waiting.incrementAndGet();
 		try
 		{
-			try
+			boolean released = false;
+			for(int i = 0; i < SPINS && !released; i++)
 			{
-				trip.await();
-			} catch(InterruptedException ex)
+				released = released(entry);
+			}
+			for(int i = 0; i < YIELDS && !released; i++)
 			{
-				ex.printStackTrace();
+				Thread.yield();
+				released = released(entry);
 			}
-		} finally
+			Thread current = Thread.currentThread();
+			while(!released)
+			{
+				if(Thread.interrupted())
+				{
+					new InterruptedException("Interrupted waiting for the barrier").printStackTrace();
+					break;
+				}
+				//register before the final check, so a trip in between still unparks us
+				parked.add(current);
+				if(!released(entry))
+				{
+					LockSupport.park(this);
+				}
+				parked.remove(current);
+				released = released(entry);
+			}
+		}finally
+		{
+			waiting.decrementAndGet();
+		}
+		long end = System.nanoTime();
+		if(phase.get() != entry)
 		{
-			lock.unlock();
+			wakeLatency.record(end - tripTime);
 		}
+		waitTime.record(end - start);
+		return end - start;
+	}
+	
+	/**
+	 * Returns true if a waiter that arrived in the given phase may go.
+	 * @param entry The phase the waiter arrived in.
+	 * @return True if released.
+	 */
+	private boolean released(int entry)
+	{
+		return phase.get() != entry || freeReign;
+	}
+	
+	/**
+	 * @return The number of threads currently waiting.
+	 */
+	public int getNumberWaiting()
+	{
+		return waiting.get();
+	}
+	
+	/**
+	 * @return The number of trips made with no one waiting, i.e. the waiting side was still busy.
+	 */
+	public long getMissedTrips()
+	{
+		return missedTrips.get();
+	}
+	
+	/**
+	 * @return The histogram of the time threads spend in waitFor().
+	 */
+	public LatencyHistogram getWaitTime()
+	{
+		return waitTime;
+	}
+	
+	/**
+	 * @return The histogram of the time between a trip and the waiting thread resuming.
+	 */
+	public LatencyHistogram getWakeLatency()
+	{
+		return wakeLatency;
 	}
 }
\ No newline at end of file
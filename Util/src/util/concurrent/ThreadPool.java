@@ -1,10 +1,19 @@
 package util.concurrent;
 
-import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import util.pool.ReferencePool;
 
 /**
  * 
  * Object that manages a variable sized pool of threads.
+ * Each child thread owns a task deque. A thread works from the back of its own deque and, once it runs dry, steals from the front of the others.
+ * In virtual mode there are no child threads, instead each task gets its own virtual thread and the pool size caps how many run at once.
+ * Tasks may add tasks of their own and call startAndWait(), which then only waits for the tasks they added.
  * 
  * @author F4113nb34st
  *
@@ -12,29 +21,64 @@ import java.util.LinkedList;
 public class ThreadPool
 {
 	/**
-	 * List of available tasks.
+	 * The number of failed steal sweeps a child thread makes before it hibernates.
 	 */
-	private volatile LinkedList<Runnable> taskQueue;
+	private static final int SPIN_SWEEPS = 64;
 	
 	/**
-	 * Array of the threads in this ThreadPool.
+	 * How long a child thread waiting on other tasks parks for when it can't find one to help with.
 	 */
-	private Thread[] threads;
+	private static final long HELP_PARK_NANOS = 50000;
 	
 	/**
-	 * The hibernation lock to suspend the child threads until they are needed.
+	 * Array of the threads in this ThreadPool. Empty in virtual mode.
 	 */
-	private Object hibernate = new Object();
+	private PoolThread[] threads;
 	
 	/**
-	 * The wait lock to suspend the main thread until the tasks are completed.
+	 * The number of child threads, or the concurrency cap in virtual mode.
 	 */
-	private Object waitLock = new Object();
+	private final int size;
+	
+	/**
+	 * Tasks waiting for start() in virtual mode. Null otherwise.
+	 */
+	private final ConcurrentLinkedQueue<Runnable> virtualQueue;
+	
+	/**
+	 * Limits the number of tasks running at once in virtual mode. Null otherwise.
+	 */
+	private final Semaphore virtualPermits;
+	
+	/**
+	 * Creates the threads for tasks in virtual mode. Null otherwise.
+	 */
+	private final ThreadFactory virtualFactory;
+	
+	/**
+	 * The task the current virtual thread is running.
+	 */
+	private final ThreadLocal<VirtualTask> currentVirtual = new ThreadLocal<VirtualTask>();
 	
 	/**
-	 * The number of hibernating threads.
+	 * The live counters of this pool.
 	 */
-	private volatile int numHibernating;
+	private final PoolStats stats;
+	
+	/**
+	 * The index of the next deque to receive a task added from outside the pool.
+	 */
+	private final AtomicInteger nextDeque = new AtomicInteger();
+	
+	/**
+	 * The number of tasks that have been added but not yet completed.
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+	
+	/**
+	 * The wait lock to suspend the main thread until the tasks are completed.
+	 */
+	private Object waitLock = new Object();
 	
 	/**
 	 * True if this ThreadPool should finish.
@@ -47,12 +91,40 @@ public class ThreadPool
 	 */
 	public ThreadPool(int size)
 	{
-		taskQueue = new LinkedList<Runnable>();
-		threads = new Thread[size];
+		this(size, false);
+	}
+	
+	/**
+	 * Creates a new ThreadPool of the given size.
+	 * In virtual mode each task is run on its own virtual thread, at most size at a time, which suits tasks that block on I/O.
+	 * If the JVM has no virtual threads the pool is built with size child threads instead, and isVirtual() returns false.
+	 * @param s The number of child threads, or the concurrency cap in virtual mode.
+	 * @param virtual True to run tasks on virtual threads.
+	 */
+	public ThreadPool(int s, boolean virtual)
+	{
+		size = s;
+		ThreadFactory factory = virtual ? createVirtualFactory() : null;
+		stats = new PoolStats(factory != null ? 0 : size);
+		if(factory != null)
+		{
+			threads = new PoolThread[0];
+			virtualQueue = new ConcurrentLinkedQueue<Runnable>();
+			virtualPermits = new Semaphore(size);
+			virtualFactory = factory;
+			return;
+		}
+		virtualQueue = null;
+		virtualPermits = null;
+		virtualFactory = null;
+		threads = new PoolThread[size];
+		for(int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new PoolThread(i);
+		}
+		//start only once every deque exists, so no thread can steal from a null slot
 		for(int i = 0; i < threads.length; i++)
 		{
-			//create and start all child threads
-			threads[i] = new PoolThread();
 			threads[i].start();
 		}
 	}
@@ -63,29 +135,141 @@ public class ThreadPool
 	 */
 	public int poolSize()
 	{
-		return threads.length;
+		return size;
+	}
+	
+	/**
+	 * @return The live counters of this pool.
+	 */
+	public PoolStats getStats()
+	{
+		return stats;
+	}
+	
+	/**
+	 * @return True if this pool runs tasks on virtual threads.
+	 */
+	public boolean isVirtual()
+	{
+		return virtualQueue != null;
 	}
 	
 	/**
 	 * Adds a new task that will be run once by each thread.
 	 * @param runner The task.
 	 */
-	public synchronized void addGlobalTask(Runnable runner)
+	public void addGlobalTask(Runnable runner)
 	{
-		//equivalent to adding the runner poolSize() times to the taskQueue
+		//equivalent to adding the runner poolSize() times, but one copy lands on each thread's deque
+		pending.addAndGet(size);
+		AtomicInteger scope = currentScope();
+		if(scope != null)
+		{
+			scope.addAndGet(size);
+			runner = new ScopedTask(runner, scope);
+		}
+		stats.taskQueued(size);
+		runner = new TimedTask(runner);
+		if(isVirtual())
+		{
+			for(int i = 0; i < size; i++)
+			{
+				virtualQueue.add(runner);
+			}
+			return;
+		}
 		for(int i = 0; i < threads.length; i++)
 		{
-			taskQueue.add(runner);
+			threads[i].tasks.addLast(runner);
 		}
 	}
 	
 	/**
-	 * Adds the given task to the taskQueue of this ThreadPool.
+	 * Adds a new task that will be run once by each thread, starts the pool, and waits for just those runs to complete.
+	 * Unlike startAndWait(), other tasks in the pool aren't waited for. Safe to call from inside a task of the same pool.
 	 * @param runner The task.
 	 */
-	public synchronized void addTask(Runnable runner)
+	public void runGlobalTask(Runnable runner)
 	{
-		taskQueue.add(runner);
+		AtomicInteger counter = new AtomicInteger(size);
+		addGlobalTask(new ScopedTask(runner, counter));
+		start();
+		waitOn(counter);
+	}
+	
+	/**
+	 * Adds the given task to this ThreadPool.
+	 * Tasks added from a child thread go on that thread's own deque, others are spread round-robin.
+	 * @param runner The task.
+	 */
+	public void addTask(Runnable runner)
+	{
+		pending.incrementAndGet();
+		AtomicInteger scope = currentScope();
+		if(scope != null)
+		{
+			scope.incrementAndGet();
+			runner = new ScopedTask(runner, scope);
+		}
+		stats.taskQueued(1);
+		enqueue(new TimedTask(runner));
+	}
+	
+	/**
+	 * Submits the given task to run as soon as all of its dependencies have completed, without waiting for start().
+	 * If a dependency failed, the task is skipped and fails with the same exception.
+	 * The task counts toward startAndWait(), but not toward the tasks a running task waits for, so use the handle for that.
+	 * @param runner The task.
+	 * @param dependencies The tasks that must complete first.
+	 * @return The handle of the task.
+	 */
+	public TaskHandle submit(Runnable runner, TaskHandle... dependencies)
+	{
+		pending.incrementAndGet();
+		TaskHandle handle = new TaskHandle(this, runner, dependencies.length);
+		for(TaskHandle dependency : dependencies)
+		{
+			if(!dependency.addDependent(handle))
+			{
+				//already done
+				handle.dependencyDone(dependency);
+			}
+		}
+		//release the submission's own hold on the task
+		handle.dependencyDone(null);
+		return handle;
+	}
+	
+	/**
+	 * Queues a submitted task whose dependencies are done and wakes the pool.
+	 * @param handle The task's handle.
+	 */
+	void schedule(TaskHandle handle)
+	{
+		stats.taskQueued(1);
+		enqueue(new TimedTask(handle.runner));
+		start();
+	}
+	
+	/**
+	 * Puts the given already counted task on a deque.
+	 * @param runner The task.
+	 */
+	private void enqueue(Runnable runner)
+	{
+		if(isVirtual())
+		{
+			virtualQueue.add(runner);
+			return;
+		}
+		PoolThread current = currentPoolThread();
+		if(current != null)
+		{
+			current.tasks.addLast(runner);
+		}else
+		{
+			threads[(nextDeque.getAndIncrement() & Integer.MAX_VALUE) % threads.length].tasks.addLast(runner);
+		}
 	}
 	
 	/**
@@ -93,10 +277,23 @@ public class ThreadPool
 	 */
 	public void start()
 	{
+		if(isVirtual())
+		{
+			//launch a thread for every waiting task, the permits hold back all but poolSize() of them
+			Runnable task;
+			while(!isClosed && (task = virtualQueue.poll()) != null)
+			{
+				virtualFactory.newThread(new VirtualTask(task)).start();
+			}
+			return;
+		}
 		//signal all hibernating threads to resume
-		synchronized(hibernate)
+		for(int i = 0; i < threads.length; i++)
 		{
-			hibernate.notifyAll();
+			if(threads[i].hibernating)
+			{
+				LockSupport.unpark(threads[i]);
+			}
 		}
 	}
 	
@@ -107,12 +304,20 @@ public class ThreadPool
 	{
 		//start
 		start();
+		if(inTask())
+		{
+			//waiting on the whole pool from inside it would wait on ourselves, so wait on what we added
+			AtomicInteger scope = currentScope();
+			clearScope();
+			waitOn(scope);
+			return;
+		}
 		if(!isClosed)
 		{
 			//wait til all tasks done
 			synchronized(waitLock)
 			{
-				while(moreTasks())
+				while(pending.get() > 0 && !isClosed)
 				{
 					try
 					{
@@ -133,60 +338,266 @@ public class ThreadPool
 	{
 		isClosed = true;
 		start();
+		synchronized(waitLock)
+		{
+			waitLock.notifyAll();
+		}
 	}
 	
 	/**
-	 * Hibernates the current thread if there are no more tasks to be completed. Also alerts the main thread if it is waiting.
-	 * Called by child threads.
+	 * Marks one task as completed. Alerts the main thread if it was the last one.
 	 */
-	private void hibernate()
+	private void taskDone()
 	{
-		synchronized(hibernate)
+		if(pending.decrementAndGet() == 0)
 		{
-			//if more tasks, don't hibernate silly
-			while(!moreTasks())
+			synchronized(waitLock)
+			{
+				waitLock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Waits until the given counter reaches zero.
+	 * Child threads help run tasks in the meantime, virtual tasks give up their permit while they wait.
+	 * @param counter The counter.
+	 */
+	void waitOn(AtomicInteger counter)
+	{
+		PoolThread thread = currentPoolThread();
+		if(thread != null)
+		{
+			thread.helpWhile(counter);
+			return;
+		}
+		VirtualTask task = isVirtual() ? currentVirtual.get() : null;
+		if(task != null)
+		{
+			virtualPermits.release();
+		}
+		synchronized(counter)
+		{
+			while(counter.get() > 0 && !isClosed)
 			{
-				//if the last thread to finish
-				if(numHibernating == poolSize() - 1)
-				{
-					//notify the sleeping main thread
-					synchronized(waitLock)
-					{
-						waitLock.notifyAll();
-					}
-				}
-				//increase hibernating count
-				numHibernating++;
 				try
 				{
-					//hibernate
-					hibernate.wait();
+					counter.wait();
 				} catch(InterruptedException ex)
 				{
 					//ex.printStackTrace();
 				}
-				//we're done hibernating, reduce hibernating count and return
-				numHibernating--;
+			}
+		}
+		if(task != null)
+		{
+			virtualPermits.acquireUninterruptibly();
+		}
+	}
+	
+	/**
+	 * Decrements the given counter, alerting anyone in waitOn() if it reached zero.
+	 * @param counter The counter.
+	 */
+	static void countDown(AtomicInteger counter)
+	{
+		if(counter.decrementAndGet() == 0)
+		{
+			synchronized(counter)
+			{
+				counter.notifyAll();
 			}
 		}
 	}
 	
 	/**
-	 * Returns true if there are more tasks to be completed.
+	 * @return True if the calling thread is running a task of this pool.
+	 */
+	private boolean inTask()
+	{
+		return currentPoolThread() != null || (isVirtual() && currentVirtual.get() != null);
+	}
+	
+	/**
+	 * Returns the counter of tasks added by the running task, creating it if needed.
+	 * @return The counter, or null if not called from a task of this pool.
+	 */
+	private AtomicInteger currentScope()
+	{
+		PoolThread thread = currentPoolThread();
+		if(thread != null)
+		{
+			if(thread.scope == null)
+			{
+				thread.scope = new AtomicInteger();
+			}
+			return thread.scope;
+		}
+		VirtualTask task = isVirtual() ? currentVirtual.get() : null;
+		if(task != null)
+		{
+			if(task.scope == null)
+			{
+				task.scope = new AtomicInteger();
+			}
+			return task.scope;
+		}
+		return null;
+	}
+	
+	/**
+	 * Clears the counter of tasks added by the running task, so the next batch starts a fresh one.
+	 */
+	private void clearScope()
+	{
+		PoolThread thread = currentPoolThread();
+		if(thread != null)
+		{
+			thread.scope = null;
+		}else
+		{
+			currentVirtual.get().scope = null;
+		}
+	}
+	
+	/**
+	 * Returns a factory for virtual threads. Looked up reflectively so the pool still runs on older JVMs.
+	 * @return The thread factory, or null if virtual threads are not supported.
+	 */
+	private static ThreadFactory createVirtualFactory()
+	{
+		try
+		{
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory)Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		}catch(Exception ex)
+		{
+			//a thread per task would swamp the OS, the caller falls back to child threads
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns true if any deque has a task waiting to be run.
 	 * @return True if more tasks left.
 	 */
-	private synchronized boolean moreTasks()
+	private boolean moreTasks()
 	{
-		return !taskQueue.isEmpty();
+		for(int i = 0; i < threads.length; i++)
+		{
+			if(!threads[i].tasks.isEmpty())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the PoolThread of this pool that is calling this method.
+	 * @return The current PoolThread, or null if called from outside this pool.
+	 */
+	private PoolThread currentPoolThread()
+	{
+		Thread current = Thread.currentThread();
+		if(current instanceof PoolThread && ((PoolThread)current).getPool() == this)
+		{
+			return (PoolThread)current;
+		}
+		return null;
+	}
+	
+	/**
+	 * Wraps a queued task to record how long it waited and ran.
+	 */
+	private class TimedTask implements Runnable
+	{
+		private final Runnable task;
+		private final long queuedAt = System.nanoTime();
+		
+		private TimedTask(Runnable t)
+		{
+			task = t;
+		}
+		
+		@Override
+		public void run()
+		{
+			long start = System.nanoTime();
+			stats.taskStarted(queuedAt, start);
+			try
+			{
+				task.run();
+			}finally
+			{
+				stats.taskCompleted(System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Wraps a task added by another task, so the adding task can wait for it.
+	 */
+	private static class ScopedTask implements Runnable
+	{
+		private final Runnable task;
+		private final AtomicInteger scope;
+		
+		private ScopedTask(Runnable t, AtomicInteger s)
+		{
+			task = t;
+			scope = s;
+		}
+		
+		@Override
+		public void run()
+		{
+			try
+			{
+				task.run();
+			}finally
+			{
+				countDown(scope);
+			}
+		}
 	}
 	
 	/**
-	 * Returns a new task from the queue.
-	 * @return A task from the queue.
+	 * Runs a single task in virtual mode once a permit is free.
 	 */
-	private synchronized Runnable getTask()
+	private class VirtualTask implements Runnable
 	{
-		return taskQueue.pollFirst();
+		private final Runnable task;
+		
+		/**
+		 * The counter of tasks added by this task since its last startAndWait().
+		 */
+		private AtomicInteger scope;
+		
+		private VirtualTask(Runnable t)
+		{
+			task = t;
+		}
+		
+		@Override
+		public void run()
+		{
+			virtualPermits.acquireUninterruptibly();
+			currentVirtual.set(this);
+			try
+			{
+				task.run();
+			}catch(Exception ex)
+			{
+				ex.printStackTrace();
+				close();
+			}finally
+			{
+				currentVirtual.remove();
+				virtualPermits.release();
+				taskDone();
+			}
+		}
 	}
 	
 	/**
@@ -194,12 +605,147 @@ public class ThreadPool
 	 */
 	public class PoolThread extends Thread
 	{
-		public PoolThread()
+		/**
+		 * The index of this thread in the pool.
+		 */
+		private final int index;
+		
+		/**
+		 * This thread's task deque. The owner works the back, thieves take from the front.
+		 */
+		private final ConcurrentLinkedDeque<Runnable> tasks = new ConcurrentLinkedDeque<Runnable>();
+		
+		/**
+		 * True while this thread is parked waiting for work.
+		 */
+		private volatile boolean hibernating = false;
+		
+		/**
+		 * The counter of tasks added by the running task since its last startAndWait().
+		 */
+		private AtomicInteger scope;
+		
+		/**
+		 * This thread's counters.
+		 */
+		private final PoolStats.WorkerStats counters;
+		
+		public PoolThread(int i)
 		{
+			index = i;
+			counters = stats.workers[i];
 			//all pool threads are daemon
 			setDaemon(true);
 		}
 		
+		/**
+		 * @return The ThreadPool that owns this thread.
+		 */
+		private ThreadPool getPool()
+		{
+			return ThreadPool.this;
+		}
+		
+		/**
+		 * Returns a task from this thread's own deque, or steals one from another thread.
+		 * @return The task or null if every deque is empty.
+		 */
+		private Runnable findTask()
+		{
+			Runnable task = tasks.pollLast();
+			if(task != null)
+			{
+				return task;
+			}
+			//sweep the other deques, starting with our neighbour so thieves spread out
+			for(int i = 1; i < threads.length; i++)
+			{
+				task = threads[(index + i) % threads.length].tasks.pollFirst();
+				if(task != null)
+				{
+					counters.steals++;
+					return task;
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Runs the given task with a fresh scope, restoring the current one afterwards since we may be helping mid-task.
+		 * @param task The task.
+		 */
+		private void runTask(Runnable task)
+		{
+			AtomicInteger saved = scope;
+			scope = null;
+			try
+			{
+				task.run();
+			}finally
+			{
+				scope = saved;
+				counters.tasksRun++;
+				taskDone();
+			}
+		}
+		
+		/**
+		 * Runs other tasks until the given counter reaches zero.
+		 * @param counter The counter.
+		 */
+		private void helpWhile(AtomicInteger counter)
+		{
+			int misses = 0;
+			while(counter.get() > 0 && !isClosed)
+			{
+				Runnable task = findTask();
+				if(task != null)
+				{
+					runTask(task);
+					misses = 0;
+				}else
+				if(++misses < SPIN_SWEEPS)
+				{
+					Thread.yield();
+				}else
+				{
+					//whatever we wait on is running elsewhere, no need to burn the core
+					LockSupport.parkNanos(HELP_PARK_NANOS);
+				}
+			}
+		}
+		
+		/**
+		 * Hibernates the current thread if there are no more tasks to be completed.
+		 * Spins and yields briefly first, since new tasks usually follow soon after.
+		 */
+		private void hibernate()
+		{
+			//publish the start, so the stats count the time while we sleep
+			stats.idleStarted(counters, System.nanoTime());
+			try
+			{
+				for(int i = 0; i < SPIN_SWEEPS; i++)
+				{
+					if(moreTasks() || isClosed)
+					{
+						return;
+					}
+					Thread.yield();
+				}
+				//publish that we are hibernating before the final check, so start() can't miss us
+				hibernating = true;
+				if(!moreTasks() && !isClosed)
+				{
+					LockSupport.park(this);
+				}
+				hibernating = false;
+			}finally
+			{
+				stats.idleEnded(counters, System.nanoTime());
+			}
+		}
+		
 		@Override
 		public void run()
 		{
@@ -213,13 +759,15 @@ public class ThreadPool
 					while(true)
 					{
 						//get a task
-						task = getTask();
+						task = findTask();
 						if(task == null)
 						{
 							break;
 						}
 						//perform it
-						task.run();
+						runTask(task);
+						//recycle what it got from ReferencePools, tasks run while helping belong to an outer task and don't
+						ReferencePool.clearAll();
 					}
 					//hibernate til more tasks
 					hibernate();
@@ -230,11 +778,6 @@ public class ThreadPool
 			}finally
 			{
 				close();
-				//notify the sleeping main thread
-				synchronized(waitLock)
-				{
-					waitLock.notifyAll();
-				}
 			}
 		}
 	}
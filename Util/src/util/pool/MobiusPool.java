@@ -1,45 +1,172 @@
 package util.pool;
 
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import util.Copyable;
 
 /**
  * 
  * A pool of objects that are used frequently and briefly. 
  * The distribution of objects means that objects will not be handed out again until all have been used.
+ * Objects are kept in a fixed ring, so get() is O(1). In debug mode every hand out is stamped, so a caller can check it still owns an object.
  * 
  * @author F4113nb34st
  */
 @SuppressWarnings({"unchecked"})
 public final class MobiusPool<E extends Copyable>
 {
-	private int size;
+	private final Object[] ring;
 	private int index = 0;
-	private final LinkedList<E> pool = new LinkedList<E>();
+	private int created = 0;
+	private long gets = 0;
 	private final E master;
 	
+	/**
+	 * The stamp of each slot's current hand out. Null unless in debug mode.
+	 */
+	private final long[] stamps;
+	
+	/**
+	 * The slot of each object. Null unless in debug mode.
+	 */
+	private final IdentityHashMap<Object, Integer> slots;
+	
 	public MobiusPool(E masterInstance, int s)
+	{
+		this(masterInstance, s, false);
+	}
+	
+	/**
+	 * Creates a new MobiusPool.
+	 * @param masterInstance The object to copy to fill the ring.
+	 * @param s The size of the ring.
+	 * @param debug True to stamp every hand out, for stampOf() and isStale().
+	 */
+	public MobiusPool(E masterInstance, int s, boolean debug)
 	{
 		master = masterInstance;
-		size = s;
+		ring = new Object[Math.max(s, 1)];
+		stamps = debug ? new long[ring.length] : null;
+		slots = debug ? new IdentityHashMap<Object, Integer>() : null;
 	}
 	
 	public E get()
 	{
-		E value;
-		if(index >= pool.size())
+		Object value = ring[index];
+		if(value == null)
 		{
-			value = (E)master.copy();
-			pool.add(value);
-		}else
+			value = master.copy();
+			ring[index] = value;
+			created++;
+			if(slots != null)
+			{
+				slots.put(value, index);
+			}
+		}
+		gets++;
+		if(stamps != null)
 		{
-			value = pool.get(index);
+			stamps[index] = gets;
 		}
 		index++;
-		if(index >= size)
+		if(index >= ring.length)
 		{
 			index = 0;
 		}
-		return value;
+		return (E)value;
+	}
+	
+	/**
+	 * Returns the stamp of the given object's current hand out. Debug mode only.
+	 * @param value The object, as returned by get().
+	 * @return The stamp, or -1 if not in debug mode or not from this pool.
+	 */
+	public long stampOf(E value)
+	{
+		if(slots == null)
+		{
+			return -1;
+		}
+		Integer slot = slots.get(value);
+		return slot == null ? -1 : stamps[slot];
+	}
+	
+	/**
+	 * Returns true if the given object has been handed out again since it was stamped. Always false outside debug mode.
+	 * @param value The object.
+	 * @param stamp The stamp from stampOf() when the object was received.
+	 * @return True if someone else may now be using the object.
+	 */
+	public boolean isStale(E value, long stamp)
+	{
+		return slots != null && stampOf(value) != stamp;
+	}
+	
+	/**
+	 * Throws if the given object has been handed out again since it was stamped.
+	 * @param value The object.
+	 * @param stamp The stamp from stampOf() when the object was received.
+	 */
+	public void checkStale(E value, long stamp)
+	{
+		if(isStale(value, stamp))
+		{
+			throw new IllegalStateException("MobiusPool object kept past a full rotation of " + ring.length + ", the pool is too small for its use");
+		}
+	}
+	
+	/**
+	 * @return The size of the ring.
+	 */
+	public int getSize()
+	{
+		return ring.length;
+	}
+	
+	/**
+	 * @return The number of objects created so far. Reaches the size once the ring is full.
+	 */
+	public int getCreated()
+	{
+		return created;
+	}
+	
+	/**
+	 * @return The number of objects out, which is every object created as none are given back.
+	 */
+	public int getOutstanding()
+	{
+		return created;
+	}
+	
+	/**
+	 * @return The most objects out at once, the same as getOutstanding() as none are given back.
+	 */
+	public int getPeak()
+	{
+		return created;
+	}
+	
+	/**
+	 * @return The number of hand outs served by an already created object.
+	 */
+	public long getReused()
+	{
+		return gets - created;
+	}
+	
+	/**
+	 * @return The number of calls to get().
+	 */
+	public long getGets()
+	{
+		return gets;
+	}
+	
+	/**
+	 * @return The number of full rotations of the ring.
+	 */
+	public long getRotations()
+	{
+		return gets / ring.length;
 	}
 }
@@ -1,51 +1,261 @@
 package util.pool;
 
-import java.lang.reflect.Method;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import util.Copyable;
 
 /**
  * 
  * A pool of objects that are used temporarily. May be reclaimed once no longer needed.
+ * Each thread keeps its own cache of free objects, so get() and release() take no lock and allocate nothing.
+ * Caches trade fixed size magazines of objects through a bounded lock-free depot, anything beyond that is left to the GC.
+ * Occupancy is counted, and leak tracking can be turned on to find objects that are never released.
  * 
  * @author F4113nb34st
  */
 @SuppressWarnings("unchecked")
 public final class ObjectPool<E extends Copyable>
 {
-	private static Method clone;
-	static
+	/**
+	 * The default number of objects in a magazine.
+	 */
+	private static final int MAGAZINE_SIZE = 32;
+	
+	/**
+	 * The default number of full magazines the depot holds.
+	 */
+	private static final int DEPOT_SIZE = 16;
+	
+	private final E master;
+	private final int magazineSize;
+	
+	/**
+	 * Full magazines shared between threads.
+	 */
+	private final Depot full;
+	
+	/**
+	 * Empty magazines, kept so trading with the depot doesn't allocate.
+	 */
+	private final Depot empty;
+	
+	private final PoolCounters counters = new PoolCounters();
+	
+	/**
+	 * Each thread's cache of free objects.
+	 */
+	private final ThreadLocal<Cache> caches = new ThreadLocal<Cache>()
 	{
-		try
+		@Override
+		protected Cache initialValue()
 		{
-			clone = Object.class.getDeclaredMethod("clone");
-		}catch(NoSuchMethodException | SecurityException ex)
-		{
-			ex.printStackTrace();
+			return new Cache();
 		}
-		clone.setAccessible(true);
-	}
-	
-	private final LinkedList<E> pool = new LinkedList<E>();
-	private final E master;
+	};
 	
 	public ObjectPool(E masterInstance)
+	{
+		this(masterInstance, MAGAZINE_SIZE, DEPOT_SIZE);
+	}
+	
+	/**
+	 * Creates a new ObjectPool.
+	 * @param masterInstance The object to copy when the pool is empty.
+	 * @param magSize The number of objects moved to or from the depot at once. Each thread caches up to twice this.
+	 * @param depotSize The number of full magazines the depot holds.
+	 */
+	public ObjectPool(E masterInstance, int magSize, int depotSize)
 	{
 		master = masterInstance;
+		magazineSize = Math.max(magSize, 1);
+		full = new Depot(depotSize);
+		empty = new Depot(depotSize);
 	}
 	
-	public synchronized E get()
+	public E get()
 	{
-		E val = pool.poll();
-		if(val == null)
+		Cache cache = caches.get();
+		if(cache.count == 0 && !cache.refill())
 		{
-			val = (E)master.copy();
+			E val = (E)master.copy();
+			counters.acquired(val, true);
+			return val;
 		}
+		E val = (E)cache.items[--cache.count];
+		cache.items[cache.count] = null;
+		counters.acquired(val, false);
 		return val;
 	}
 	
-	public synchronized void release(E val)
+	public void release(E val)
+	{
+		counters.released(val);
+		Cache cache = caches.get();
+		if(cache.count == cache.items.length)
+		{
+			cache.flush();
+		}
+		cache.items[cache.count++] = val;
+	}
+	
+	/**
+	 * @return The number of objects handed out and not yet released.
+	 */
+	public long getOutstanding()
+	{
+		return counters.getOutstanding();
+	}
+	
+	/**
+	 * @return The most objects that have been out at once since leak tracking was turned on. Not kept while it is off.
+	 */
+	public long getPeak()
+	{
+		return counters.getPeak();
+	}
+	
+	/**
+	 * @return The number of objects created because the pool was empty.
+	 */
+	public long getCreated()
+	{
+		return counters.getCreated();
+	}
+	
+	/**
+	 * @return The number of hand outs served from the pool.
+	 */
+	public long getReused()
 	{
-		pool.add(val);
+		return counters.getReused();
+	}
+	
+	/**
+	 * Turns leak tracking on or off. While on, get() records where each object was handed out, which is slow.
+	 * @param track True to track leaks.
+	 */
+	public void setLeakTracking(boolean track)
+	{
+		counters.setLeakTracking(track);
+	}
+	
+	/**
+	 * @return True if tracking leaks.
+	 */
+	public boolean isLeakTracking()
+	{
+		return counters.isLeakTracking();
+	}
+	
+	/**
+	 * @return The number of objects that were collected without being released while tracking.
+	 */
+	public long getLeakCount()
+	{
+		return counters.getLeakCount();
+	}
+	
+	/**
+	 * Returns where the most recent leaked objects were handed out. Leaks only show once the GC has collected them.
+	 * @return The stack traces of the sites, oldest first.
+	 */
+	public List<Throwable> getLeaks()
+	{
+		return counters.getLeaks();
+	}
+	
+	/**
+	 * A thread's stack of free objects, holding up to two magazines.
+	 */
+	private final class Cache
+	{
+		private final Object[] items = new Object[magazineSize * 2];
+		private int count;
+		
+		/**
+		 * Takes a full magazine from the depot.
+		 * @return False if the depot had none.
+		 */
+		private boolean refill()
+		{
+			Object[] magazine = full.take();
+			if(magazine == null)
+			{
+				return false;
+			}
+			System.arraycopy(magazine, 0, items, 0, magazineSize);
+			count = magazineSize;
+			//clear it so the depot doesn't keep handed out objects alive
+			for(int i = 0; i < magazineSize; i++)
+			{
+				magazine[i] = null;
+			}
+			empty.put(magazine);
+			return true;
+		}
+		
+		/**
+		 * Moves a magazine worth of objects to the depot. If the depot is full they are dropped.
+		 */
+		private void flush()
+		{
+			count -= magazineSize;
+			Object[] magazine = empty.take();
+			if(magazine == null)
+			{
+				magazine = new Object[magazineSize];
+			}
+			System.arraycopy(items, count, magazine, 0, magazineSize);
+			for(int i = count; i < items.length; i++)
+			{
+				items[i] = null;
+			}
+			full.put(magazine);
+		}
+	}
+	
+	/**
+	 * A bounded lock-free set of magazines.
+	 */
+	private static final class Depot
+	{
+		private final AtomicReferenceArray<Object[]> slots;
+		
+		private Depot(int size)
+		{
+			slots = new AtomicReferenceArray<Object[]>(Math.max(size, 1));
+		}
+		
+		/**
+		 * @return A magazine, or null if there are none.
+		 */
+		private Object[] take()
+		{
+			for(int i = 0; i < slots.length(); i++)
+			{
+				Object[] magazine = slots.get(i);
+				if(magazine != null && slots.compareAndSet(i, magazine, null))
+				{
+					return magazine;
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Adds a magazine.
+		 * @return False if the depot was full.
+		 */
+		private boolean put(Object[] magazine)
+		{
+			for(int i = 0; i < slots.length(); i++)
+			{
+				if(slots.get(i) == null && slots.compareAndSet(i, null, magazine))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
 	}
 }
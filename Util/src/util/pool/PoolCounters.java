@@ -0,0 +1,290 @@
+package util.pool;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * Occupancy counters shared by the pools that hand objects out and take them back.
+ * With leak tracking on, every hand out records where it happened. If the object is collected without being released, that site is kept as a leak.
+ * Leak tracking defaults to the "util.pool.trackLeaks" system property.
+ * The counts are striped by thread, so threads handing out objects at once don't fight over one cache line.
+ * The peak needs a global view, so it is only kept while leak tracking is on, which serializes hand outs anyway.
+ * 
+ * @author F4113nb34st
+ */
+final class PoolCounters
+{
+	/**
+	 * The number of leak sites kept, older ones are dropped.
+	 */
+	private static final int MAX_LEAKS = 64;
+	
+	//the counters in each stripe
+	private static final int CREATED = 0;
+	private static final int REUSED = 1;
+	private static final int OUTSTANDING = 2;
+	
+	/**
+	 * The longs in a stripe, a cache line's worth so stripes don't share lines.
+	 */
+	private static final int STRIDE = 8;
+	
+	/**
+	 * The number of stripes, a power of two of at least twice the processors.
+	 */
+	private static final int STRIPES = Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors(), 1) * 4 - 1);
+	
+	/**
+	 * The counters, STRIDE longs per stripe.
+	 */
+	private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * STRIDE);
+	private final AtomicLong peak = new AtomicLong();
+	
+	/**
+	 * The leak tracker, or null if not tracking.
+	 */
+	private volatile LeakTracker tracker = Boolean.getBoolean("util.pool.trackLeaks") ? new LeakTracker() : null;
+	
+	/**
+	 * Records an object being handed out.
+	 * @param value The object.
+	 * @param fresh True if the object was just created, false if it was reused.
+	 */
+	void acquired(Object value, boolean fresh)
+	{
+		int stripe = stripe();
+		stripes.incrementAndGet(stripe + (fresh ? CREATED : REUSED));
+		stripes.incrementAndGet(stripe + OUTSTANDING);
+		LeakTracker lt = tracker;
+		if(lt != null)
+		{
+			long now = sum(OUTSTANDING);
+			long last;
+			while(now > (last = peak.get()) && !peak.compareAndSet(last, now));
+			lt.acquired(value);
+		}
+	}
+	
+	/**
+	 * Records an object being given back.
+	 * @param value The object.
+	 */
+	void released(Object value)
+	{
+		//may land on a different stripe than the hand out, only the sum matters
+		stripes.decrementAndGet(stripe() + OUTSTANDING);
+		LeakTracker lt = tracker;
+		if(lt != null)
+		{
+			lt.released(value);
+		}
+	}
+	
+	long getCreated()
+	{
+		return sum(CREATED);
+	}
+	
+	long getReused()
+	{
+		return sum(REUSED);
+	}
+	
+	long getOutstanding()
+	{
+		return sum(OUTSTANDING);
+	}
+	
+	/**
+	 * @return The most objects out at once while leak tracking was on.
+	 */
+	long getPeak()
+	{
+		return peak.get();
+	}
+	
+	/**
+	 * @return The index of the calling thread's stripe.
+	 */
+	private static int stripe()
+	{
+		long id = Thread.currentThread().getId();
+		//spread sequential ids across the stripes
+		int hash = (int)(id * 0x9E3779B97F4A7C15L >>> 32);
+		return (hash & (STRIPES - 1)) * STRIDE;
+	}
+	
+	/**
+	 * @return The total of a counter over every stripe.
+	 */
+	private long sum(int counter)
+	{
+		long total = 0;
+		for(int i = counter; i < stripes.length(); i += STRIDE)
+		{
+			total += stripes.get(i);
+		}
+		return total;
+	}
+	
+	/**
+	 * Turns leak tracking on or off. Turning it off forgets all sites, turning it on restarts the peak.
+	 * @param track True to track leaks.
+	 */
+	void setLeakTracking(boolean track)
+	{
+		if(track != (tracker != null))
+		{
+			if(track)
+			{
+				//the peak starts over from what is out now
+				peak.set(sum(OUTSTANDING));
+			}
+			tracker = track ? new LeakTracker() : null;
+		}
+	}
+	
+	boolean isLeakTracking()
+	{
+		return tracker != null;
+	}
+	
+	/**
+	 * @return The number of objects collected without being released while tracking.
+	 */
+	long getLeakCount()
+	{
+		LeakTracker lt = tracker;
+		return lt == null ? 0 : lt.getLeakCount();
+	}
+	
+	/**
+	 * @return Where the most recent leaked objects were handed out, oldest first.
+	 */
+	List<Throwable> getLeaks()
+	{
+		LeakTracker lt = tracker;
+		return lt == null ? new ArrayList<Throwable>() : lt.getLeaks();
+	}
+	
+	/**
+	 * Tracks handed out objects by weak reference, so tracking doesn't keep them alive.
+	 */
+	private static final class LeakTracker
+	{
+		private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+		
+		/**
+		 * The live sites, by identity hash of their object.
+		 */
+		private final HashMap<Integer, ArrayList<Site>> live = new HashMap<Integer, ArrayList<Site>>();
+		
+		private final ArrayList<Throwable> leaks = new ArrayList<Throwable>();
+		private long leakCount;
+		
+		private synchronized void acquired(Object value)
+		{
+			expunge();
+			Site site = new Site(value, queue);
+			ArrayList<Site> bucket = live.get(site.hash);
+			if(bucket == null)
+			{
+				bucket = new ArrayList<Site>(1);
+				live.put(site.hash, bucket);
+			}
+			bucket.add(site);
+		}
+		
+		private synchronized void released(Object value)
+		{
+			Integer hash = System.identityHashCode(value);
+			ArrayList<Site> bucket = live.get(hash);
+			if(bucket == null)
+			{
+				return;
+			}
+			for(int i = 0; i < bucket.size(); i++)
+			{
+				Site site = bucket.get(i);
+				if(site.get() == value)
+				{
+					//a cleared reference is never enqueued
+					site.clear();
+					remove(bucket, i);
+					return;
+				}
+			}
+		}
+		
+		private synchronized long getLeakCount()
+		{
+			expunge();
+			return leakCount;
+		}
+		
+		private synchronized List<Throwable> getLeaks()
+		{
+			expunge();
+			return new ArrayList<Throwable>(leaks);
+		}
+		
+		/**
+		 * Moves the sites of collected objects to the leaks.
+		 */
+		private void expunge()
+		{
+			Site site;
+			while((site = (Site)queue.poll()) != null)
+			{
+				ArrayList<Site> bucket = live.get(site.hash);
+				int index = bucket == null ? -1 : bucket.indexOf(site);
+				if(index < 0)
+				{
+					continue;
+				}
+				remove(bucket, index);
+				leakCount++;
+				if(leaks.size() >= MAX_LEAKS)
+				{
+					leaks.remove(0);
+				}
+				leaks.add(site.trace);
+			}
+		}
+		
+		private void remove(ArrayList<Site> bucket, int index)
+		{
+			Site last = bucket.remove(bucket.size() - 1);
+			if(index < bucket.size())
+			{
+				bucket.set(index, last);
+			}
+			if(bucket.isEmpty())
+			{
+				live.remove(last.hash);
+			}
+		}
+	}
+	
+	/**
+	 * An object's hand out.
+	 */
+	private static final class Site extends WeakReference<Object>
+	{
+		private final Integer hash;
+		private final Throwable trace;
+		
+		private Site(Object value, ReferenceQueue<Object> queue)
+		{
+			super(value, queue);
+			hash = System.identityHashCode(value);
+			trace = new Throwable("Pooled " + value.getClass().getName() + " handed out here was never released");
+		}
+	}
+}
@@ -1,54 +1,236 @@
 package util.pool;
 
-import java.util.LinkedList;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import util.Copyable;
 
 /**
  * 
  * A pool of objects that are used frequently and briefly. All objects are recycled once per tick.
+ * Each thread bump allocates from its own array-backed arena. clearAll() recycles every pool's arena for the calling thread in O(1),
+ * by advancing a per-thread epoch that arenas check lazily on their next get().
+ * ThreadPool child threads call clearAll() after each task they take from the pool, so objects must not outlive the task that got them.
+ * Arenas of threads that have died are dropped, their counts kept in the stats.
  * 
  * @author F4113nb34st
  */
-@SuppressWarnings({"rawtypes", "unchecked"})
+@SuppressWarnings("unchecked")
 public final class ReferencePool<E extends Copyable>
 {
-	private static final LinkedList<ReferencePool> pools = new LinkedList<ReferencePool>();
-	
-	public static void clearAll()
+	/**
+	 * Each thread's current epoch. Held in a one element array so arenas can keep a reference to it.
+	 */
+	private static final ThreadLocal<int[]> epochs = new ThreadLocal<int[]>()
 	{
-		for(ReferencePool pool : pools)
+		@Override
+		protected int[] initialValue()
 		{
-			pool.clear();
+			return new int[1];
 		}
+	};
+	
+	/**
+	 * Recycles the objects of every ReferencePool handed out on the calling thread.
+	 * Core calls this at the end of every tick and every paint, ThreadPool child threads after every task.
+	 */
+	public static void clearAll()
+	{
+		epochs.get()[0]++;
 	}
 	
-	private int index = 0;
-	private final LinkedList<E> pool = new LinkedList<E>();
 	private final E master;
 	
+	/**
+	 * Each thread's arena.
+	 */
+	private final ThreadLocal<Arena> arenas = new ThreadLocal<Arena>()
+	{
+		@Override
+		protected Arena initialValue()
+		{
+			Arena arena = new Arena(epochs.get());
+			//drop dead threads' arenas as new ones come, so thread per task use doesn't pile them up
+			expunge();
+			allArenas.add(arena);
+			return arena;
+		}
+	};
+	
+	/**
+	 * Every thread's arena, for the stats.
+	 */
+	private final ConcurrentLinkedQueue<Arena> allArenas = new ConcurrentLinkedQueue<Arena>();
+	
+	/**
+	 * The counts of dropped arenas. Guarded by allArenas.
+	 */
+	private int retiredCreated;
+	private int retiredPeak;
+	private long retiredReused;
+	
 	public ReferencePool(E masterInstance)
 	{
-		pools.add(this);
 		master = masterInstance;
 	}
 	
 	public E get()
 	{
-		E value;
-		if(index >= pool.size())
+		Arena arena = arenas.get();
+		if(arena.epoch != arena.threadEpoch[0])
 		{
-			value = (E)master.copy();
-			pool.add(value);
-		}else
+			arena.reset();
+		}
+		if(arena.index == arena.size)
 		{
-			value = pool.get(index);
+			arena.add(master.copy());
 		}
-		index++;
-		return value;
+		arena.gets++;
+		return (E)arena.items[arena.index++];
 	}
 	
+	/**
+	 * Recycles the objects of this pool handed out on the calling thread.
+	 */
 	public void clear()
 	{
-		index = 0;
+		arenas.get().reset();
+	}
+	
+	/**
+	 * @return The number of objects out since each thread's last clear, summed across threads.
+	 */
+	public int getOutstanding()
+	{
+		expunge();
+		int outstanding = 0;
+		for(Arena arena : allArenas)
+		{
+			if(arena.epoch == arena.threadEpoch[0])
+			{
+				outstanding += arena.index;
+			}
+		}
+		return outstanding;
+	}
+	
+	/**
+	 * @return The most objects any thread has had out at once between clears.
+	 */
+	public int getPeak()
+	{
+		expunge();
+		int mark;
+		synchronized(allArenas)
+		{
+			mark = retiredPeak;
+		}
+		for(Arena arena : allArenas)
+		{
+			mark = Math.max(mark, Math.max(arena.highWater, arena.index));
+		}
+		return mark;
+	}
+	
+	/**
+	 * @return The number of objects this pool has created across all threads.
+	 */
+	public int getCreated()
+	{
+		expunge();
+		int created;
+		synchronized(allArenas)
+		{
+			created = retiredCreated;
+		}
+		for(Arena arena : allArenas)
+		{
+			created += arena.size;
+		}
+		return created;
+	}
+	
+	/**
+	 * @return The number of hand outs served by an already created object, across all threads.
+	 */
+	public long getReused()
+	{
+		expunge();
+		long reused;
+		synchronized(allArenas)
+		{
+			reused = retiredReused;
+		}
+		for(Arena arena : allArenas)
+		{
+			reused += arena.gets - arena.size;
+		}
+		return reused;
+	}
+	
+	/**
+	 * Drops the arenas of threads that have died, folding their counts into the retired ones.
+	 */
+	private void expunge()
+	{
+		synchronized(allArenas)
+		{
+			Iterator<Arena> iter = allArenas.iterator();
+			while(iter.hasNext())
+			{
+				Arena arena = iter.next();
+				Thread owner = arena.owner.get();
+				if(owner == null || !owner.isAlive())
+				{
+					iter.remove();
+					retiredCreated += arena.size;
+					retiredPeak = Math.max(retiredPeak, Math.max(arena.highWater, arena.index));
+					retiredReused += arena.gets - arena.size;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A thread's objects and how many are out this epoch.
+	 */
+	private static final class Arena
+	{
+		private final int[] threadEpoch;
+		
+		/**
+		 * The thread the arena belongs to, weak so the arena doesn't keep it alive.
+		 */
+		private final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
+		private int epoch;
+		private Object[] items = new Object[16];
+		private int size;
+		private int index;
+		private int highWater;
+		private long gets;
+		
+		private Arena(int[] te)
+		{
+			threadEpoch = te;
+			epoch = te[0];
+		}
+		
+		private void reset()
+		{
+			highWater = Math.max(highWater, index);
+			index = 0;
+			epoch = threadEpoch[0];
+		}
+		
+		private void add(Object value)
+		{
+			if(size == items.length)
+			{
+				Object[] grown = new Object[items.length * 2];
+				System.arraycopy(items, 0, grown, 0, size);
+				items = grown;
+			}
+			items[size++] = value;
+		}
 	}
 }
@@ -0,0 +1,410 @@
+package util.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import render.image.DoubleImage;
+import render.image.Image;
+import render.image.NoiseImage;
+
+/**
+ * 
+ * Per-thread scratch buffers, so temporary storage needs neither a lock nor a fresh allocation each use.
+ * Arrays are kept in power of two size classes and may be longer than asked for. Images are matched by exact size,
+ * and only kept up to a byte budget, least recently released dropped first.
+ * Each thread has its own ScratchPool, get it with ScratchPool.get(). Its counts and leak tracking cover that thread only.
+ * 
+ * @author F4113nb34st
+ */
+public final class ScratchPool
+{
+	/**
+	 * The number of free arrays kept per size class.
+	 */
+	private static final int MAX_FREE = 4;
+	
+	/**
+	 * The image byte budget until setImageBudget() is called.
+	 */
+	public static final long DEFAULT_IMAGE_BUDGET = 32L << 20;
+	
+	private static final ThreadLocal<ScratchPool> local = new ThreadLocal<ScratchPool>()
+	{
+		@Override
+		protected ScratchPool initialValue()
+		{
+			return new ScratchPool();
+		}
+	};
+	
+	/**
+	 * @return The calling thread's ScratchPool.
+	 */
+	public static ScratchPool get()
+	{
+		return local.get();
+	}
+	
+	private final FreeList[] doubles = new FreeList[32];
+	private final FreeList[] floats = new FreeList[32];
+	private final FreeList[] ints = new FreeList[32];
+	
+	/**
+	 * The free images of every type, least recently released first.
+	 */
+	private final ArrayList<Image> images = new ArrayList<Image>();
+	
+	/**
+	 * The estimated bytes of the free images.
+	 */
+	private long imageBytes;
+	private long imageBudget = DEFAULT_IMAGE_BUDGET;
+	private final PoolCounters counters = new PoolCounters();
+	
+	private ScratchPool()
+	{
+		for(int i = 0; i < 32; i++)
+		{
+			doubles[i] = new FreeList();
+			floats[i] = new FreeList();
+			ints[i] = new FreeList();
+		}
+	}
+	
+	/**
+	 * Borrows a double array at least the given length. Contents are undefined.
+	 * @param length The minimum length.
+	 * @return The array.
+	 */
+	public double[] borrowDoubles(int length)
+	{
+		int sizeClass = sizeClass(length);
+		double[] array = (double[])doubles[sizeClass].pop();
+		boolean fresh = array == null;
+		if(fresh)
+		{
+			array = new double[capacity(sizeClass, length)];
+		}
+		counters.acquired(array, fresh);
+		return array;
+	}
+	
+	/**
+	 * Borrows a float array at least the given length. Contents are undefined.
+	 * @param length The minimum length.
+	 * @return The array.
+	 */
+	public float[] borrowFloats(int length)
+	{
+		int sizeClass = sizeClass(length);
+		float[] array = (float[])floats[sizeClass].pop();
+		boolean fresh = array == null;
+		if(fresh)
+		{
+			array = new float[capacity(sizeClass, length)];
+		}
+		counters.acquired(array, fresh);
+		return array;
+	}
+	
+	/**
+	 * Borrows an int array at least the given length. Contents are undefined.
+	 * @param length The minimum length.
+	 * @return The array.
+	 */
+	public int[] borrowInts(int length)
+	{
+		int sizeClass = sizeClass(length);
+		int[] array = (int[])ints[sizeClass].pop();
+		boolean fresh = array == null;
+		if(fresh)
+		{
+			array = new int[capacity(sizeClass, length)];
+		}
+		counters.acquired(array, fresh);
+		return array;
+	}
+	
+	/**
+	 * Returns a borrowed array.
+	 * @param array The array.
+	 */
+	public void release(double[] array)
+	{
+		counters.released(array);
+		doubles[releaseClass(array.length)].push(array);
+	}
+	
+	/**
+	 * Returns a borrowed array.
+	 * @param array The array.
+	 */
+	public void release(float[] array)
+	{
+		counters.released(array);
+		floats[releaseClass(array.length)].push(array);
+	}
+	
+	/**
+	 * Returns a borrowed array.
+	 * @param array The array.
+	 */
+	public void release(int[] array)
+	{
+		counters.released(array);
+		ints[releaseClass(array.length)].push(array);
+	}
+	
+	/**
+	 * Borrows a DoubleImage of exactly the given size. Contents are undefined.
+	 * @param w The width.
+	 * @param h The height.
+	 * @return The image.
+	 */
+	public DoubleImage borrowDoubleImage(int w, int h)
+	{
+		int index = findImage(DoubleImage.class, w, h);
+		if(index < 0)
+		{
+			DoubleImage image = new DoubleImage(w, h);
+			counters.acquired(image, true);
+			return image;
+		}
+		DoubleImage image = (DoubleImage)removeImage(index);
+		image.clearClip();
+		counters.acquired(image, false);
+		return image;
+	}
+	
+	/**
+	 * Borrows a NoiseImage of exactly the given size. Contents are undefined.
+	 * @param w The width.
+	 * @param h The height.
+	 * @return The image.
+	 */
+	public NoiseImage borrowNoiseImage(int w, int h)
+	{
+		int index = findImage(NoiseImage.class, w, h);
+		if(index < 0)
+		{
+			NoiseImage image = new NoiseImage(w, h);
+			counters.acquired(image, true);
+			return image;
+		}
+		NoiseImage image = (NoiseImage)removeImage(index);
+		image.clearClip();
+		counters.acquired(image, false);
+		return image;
+	}
+	
+	/**
+	 * Returns a borrowed image. Images of other types are ignored.
+	 * @param image The image.
+	 */
+	public void release(Image image)
+	{
+		if(image.getClass() == NoiseImage.class || image.getClass() == DoubleImage.class)
+		{
+			counters.released(image);
+			keep(image);
+		}
+	}
+	
+	/**
+	 * Sets the most estimated bytes of free images this thread keeps, dropping the least recently released down to it.
+	 * @param bytes The budget, 0 to keep no images.
+	 */
+	public void setImageBudget(long bytes)
+	{
+		imageBudget = bytes;
+		trimImages();
+	}
+	
+	/**
+	 * @return The most estimated bytes of free images this thread keeps.
+	 */
+	public long getImageBudget()
+	{
+		return imageBudget;
+	}
+	
+	/**
+	 * @return The estimated bytes of the free images this thread keeps.
+	 */
+	public long getImageBytes()
+	{
+		return imageBytes;
+	}
+	
+	/**
+	 * @return The number of buffers borrowed and not yet released.
+	 */
+	public long getOutstanding()
+	{
+		return counters.getOutstanding();
+	}
+	
+	/**
+	 * @return The most buffers that have been out at once since leak tracking was turned on. Not kept while it is off.
+	 */
+	public long getPeak()
+	{
+		return counters.getPeak();
+	}
+	
+	/**
+	 * @return The number of buffers allocated because none were free.
+	 */
+	public long getCreated()
+	{
+		return counters.getCreated();
+	}
+	
+	/**
+	 * @return The number of borrows served by a free buffer.
+	 */
+	public long getReused()
+	{
+		return counters.getReused();
+	}
+	
+	/**
+	 * Turns leak tracking on or off for this thread's pool. While on, borrows record where they happened.
+	 * @param track True to track leaks.
+	 */
+	public void setLeakTracking(boolean track)
+	{
+		counters.setLeakTracking(track);
+	}
+	
+	/**
+	 * @return True if tracking leaks.
+	 */
+	public boolean isLeakTracking()
+	{
+		return counters.isLeakTracking();
+	}
+	
+	/**
+	 * @return The number of buffers that were collected without being released while tracking.
+	 */
+	public long getLeakCount()
+	{
+		return counters.getLeakCount();
+	}
+	
+	/**
+	 * Returns where the most recent leaked buffers were borrowed. Leaks only show once the GC has collected them.
+	 * @return The stack traces of the sites, oldest first.
+	 */
+	public List<Throwable> getLeaks()
+	{
+		return counters.getLeaks();
+	}
+	
+	/**
+	 * Finds a free image of the given size.
+	 * @return The index or -1 if there is none.
+	 */
+	private int findImage(Class<? extends Image> type, int w, int h)
+	{
+		for(int i = images.size() - 1; i >= 0; i--)
+		{
+			Image image = images.get(i);
+			if(image.getClass() == type && image.getWidth() == w && image.getHeight() == h)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private Image removeImage(int index)
+	{
+		Image image = images.remove(index);
+		imageBytes -= sizeOf(image);
+		return image;
+	}
+	
+	private void keep(Image image)
+	{
+		images.add(image);
+		imageBytes += sizeOf(image);
+		trimImages();
+	}
+	
+	/**
+	 * Drops the least recently released images until the rest fit the budget. An image bigger than the whole budget is never kept.
+	 */
+	private void trimImages()
+	{
+		while(imageBytes > imageBudget && !images.isEmpty())
+		{
+			removeImage(0);
+		}
+	}
+	
+	/**
+	 * @return The estimated bytes of a DoubleImage or NoiseImage.
+	 */
+	private static long sizeOf(Image image)
+	{
+		long pixels = (long)image.getWidth() * image.getHeight();
+		if(image instanceof NoiseImage)
+		{
+			return pixels * 8;
+		}
+		return pixels * (image.hasAlpha() ? 32 : 24);
+	}
+	
+	/**
+	 * @return The smallest size class that holds the given length.
+	 */
+	private static int sizeClass(int length)
+	{
+		return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+	}
+	
+	/**
+	 * @return The length to allocate for the given size class, exact for lengths too big to round up.
+	 */
+	private static int capacity(int sizeClass, int length)
+	{
+		return sizeClass < 31 ? 1 << sizeClass : length;
+	}
+	
+	/**
+	 * @return The largest size class the given length can serve.
+	 */
+	private static int releaseClass(int length)
+	{
+		return 31 - Integer.numberOfLeadingZeros(Math.max(length, 1));
+	}
+	
+	/**
+	 * A small stack of free arrays.
+	 */
+	private static class FreeList
+	{
+		private final Object[] free = new Object[MAX_FREE];
+		private int size;
+		
+		private Object pop()
+		{
+			if(size == 0)
+			{
+				return null;
+			}
+			Object array = free[--size];
+			free[size] = null;
+			return array;
+		}
+		
+		private void push(Object array)
+		{
+			if(size < free.length)
+			{
+				free[size++] = array;
+			}
+		}
+	}
+}